@@ -1,5 +1,6 @@
 package com.werryxgames.messaje;
 
+import com.badlogic.gdx.Application.ApplicationType;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Net.Protocol;
 import com.badlogic.gdx.graphics.Color;
@@ -15,11 +16,17 @@ import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 
 /**
  * Client, that draws to screen player data.
@@ -27,6 +34,19 @@ import javax.crypto.NoSuchPaddingException;
  * @since 1.0
  */
 public class Client {
+  public static final int MAX_FRAME_SIZE = Config.get("network.maxFrameSize", 64 * 1024 * 1024);
+  public static final int KEEPALIVE_INTERVAL = Config.get("network.keepaliveInterval", 5);
+  public static final int KEEPALIVE_TIMEOUT = Config.get("network.keepaliveTimeout", 15);
+  public static final int RECONNECT_PAUSE = 1000;
+  // Phones often don't have AES instructions, where ChaCha20-Poly1305 is faster
+  public static final String CIPHER_SUITES = Config.get("network.cipherSuites",
+      Gdx.app != null && Gdx.app.getType() == ApplicationType.Android
+          ? "chacha20-poly1305,aes-gcm"
+          : "aes-gcm,chacha20-poly1305");
+  public static final boolean COMPRESSION = Config.get("network.compression", true);
+  public static final boolean BATCHING = Config.get("network.batching", true);
+  public static final int BATCH_WINDOW = Config.get("network.batchWindow", 2);
+  public static final boolean COMPACT_ENCODING = Config.get("network.compactEncoding", true);
 
   public Messaje game;
   public Socket socket;
@@ -43,11 +63,31 @@ public class Client {
   public DataInputStream inputStream = null;
   public DataOutputStream outputStream = null;
   public boolean reconnecting = false;
+  public FrameDecoder frameDecoder = new FrameDecoder(Client.MAX_FRAME_SIZE);
   protected Thread receiveThread = null;
   protected Thread sendThread = null;
   protected Thread reconnectThread = null;
+  protected Thread keepaliveThread = null;
+  protected volatile long lastReceiveTime = 0;
+  protected volatile long reconnectAfter = 0;
+  protected volatile CipherSuite cipherSuite = CipherSuite.AES_GCM;
+  // Enabled, when server agrees during handshake, see Compression
+  protected volatile boolean compression = false;
+  // Enabled, when server understands batches, see Batch
+  protected volatile boolean batching = false;
+  // Enabled, when server sends messages and users in CompactEncoding
+  protected volatile boolean compactEncoding = false;
+  // Set, until server replies to hello, nothing else can be sent until then
+  protected volatile boolean handshaking = false;
+  // Token of last session, that is sent after reconnect instead of login and password
+  protected volatile byte[] sessionToken = null;
+  protected volatile boolean resuming = false;
   protected ConcurrentLinkedQueue<byte[]> receiveBytes = new ConcurrentLinkedQueue<>();
   protected ConcurrentLinkedQueue<byte[]> sendBytes = new ConcurrentLinkedQueue<>();
+  protected AtomicInteger lastRequestId = new AtomicInteger();
+  // Requests, sent with request(), that didn't get response yet
+  protected ConcurrentHashMap<Integer, ResponseFuture> pendingRequests =
+      new ConcurrentHashMap<>();
   protected ErrorDialog reconnectDialog = null;
   protected boolean closing = false;
 
@@ -68,11 +108,35 @@ public class Client {
     this.port = port;
     this.socketParams = hints;
     this.reconnect(3);
+    this.keepaliveThread = new Thread(this::keepaliveLoop);
+    this.keepaliveThread.setDaemon(true);
+    this.keepaliveThread.start();
   }
 
   protected void reconnectLoop() {
+    long delay = this.reconnectAfter - System.currentTimeMillis();
+
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+
     while (!(this.closing || this.isConnected())) {
       this.reconnectBlocking();
+
+      if (!this.isConnected()) {
+        try {
+          // Random pause, so clients of restarted server don't reconnect all at once
+          //noinspection BusyWait
+          Thread.sleep(Client.RECONNECT_PAUSE / 2
+              + ThreadLocalRandom.current().nextInt(Client.RECONNECT_PAUSE));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
     }
   }
 
@@ -89,6 +153,8 @@ public class Client {
           this.currentScreen.onDisconnect();
         }
 
+        this.failPendingRequests(new IOException("Disconnected from server"));
+
         this.reconnectThread = new Thread(this::reconnectLoop);
         this.reconnectThread.start();
         this.reconnecting = true;
@@ -115,45 +181,46 @@ public class Client {
         this.reconnecting = false;
       }
 
-      int availableBytes = 0;
+      ByteBuffer frame;
 
       try {
-        availableBytes = this.inputStream.readInt();
+        frame = this.frameDecoder.read(this.inputStream);
       } catch (EOFException e) {
         this.socket.dispose();
         continue;
       } catch (SocketException e) {
         continue;
       } catch (IOException e) {
+        // After failed read position in stream is unknown, so connection must be restarted
         this.game.logException(e);
-      }
-
-      if (availableBytes < 4) {
+        this.socket.dispose();
         continue;
       }
 
-      @SuppressWarnings("ObjectAllocationInLoop") // Better than 4 GiB once allocation.
-      byte[] sentBytes = new byte[availableBytes];
+      this.lastReceiveTime = System.currentTimeMillis();
 
       try {
-        int receivedBytes = this.inputStream.read(sentBytes);
+        byte[] bytes = this.cipherSuite.decrypt(frame);
 
-        if (receivedBytes != availableBytes) {
-          //noinspection HardcodedFileSeparator
-          this.game.logger.warning(
-              String.format(Locale.ENGLISH, "Incorrect read size: %d / %d", receivedBytes,
-                  availableBytes));
+        if (this.compression) {
+          bytes = Compression.decompress(bytes, Client.MAX_FRAME_SIZE);
         }
-      } catch (IOException e) {
-        this.game.logException(e);
-      }
 
-      try {
-        this.receiveBytes.add(Aes.decrypt(sentBytes));
+        // Suite is switched right away, because next packet is encrypted with it
+        if (this.handshaking && bytes.length >= 3 && bytes[0] == 0 && bytes[1] == 13) {
+          this.onHelloReply(ByteBuffer.wrap(bytes, 2, bytes.length - 2));
+        } else if (bytes.length >= 2 && bytes[0] == 0 && bytes[1] == Batch.SERVER_CODE) {
+          // Packets of batch are handled, as if they were received one by one
+          this.receiveBytes.addAll(Batch.unpack(ByteBuffer.wrap(bytes, 2, bytes.length - 2)));
+        } else {
+          this.receiveBytes.add(bytes);
+        }
       } catch (InvalidAlgorithmParameterException | NoSuchPaddingException
                | IllegalBlockSizeException | NoSuchAlgorithmException | BadPaddingException
-               | InvalidKeyException e) {
+               | InvalidKeyException | DataFormatException | IllegalArgumentException e) {
         this.game.logException(e);
+      } finally {
+        this.frameDecoder.release(frame);
       }
 
       if (this.currentScreen != null) {
@@ -172,7 +239,48 @@ public class Client {
           this.game.logger.finest(stringBuilder.toString());
           @SuppressWarnings("ObjectAllocationInLoop") ByteBuffer packet =
               ByteBuffer.wrap(lastBytes);
-          this.currentScreen.onMessage(packet.getShort(), packet);
+          short code = packet.getShort();
+          int requestId = 0;
+
+          if (RequestHeader.hasRequestId(code)) {
+            requestId = packet.getInt();
+            code = RequestHeader.getCode(code);
+          }
+
+          if (code == 11) {
+            this.game.logger.finest(
+                "Pong, round trip: " + (System.currentTimeMillis() - packet.getLong()) + " ms");
+            continue;
+          }
+
+          if (code == 12) {
+            this.reconnectLater(packet.getInt());
+            continue;
+          }
+
+          if (code == 14 || code == 15) {
+            this.sessionToken = code == 14
+                ? Arrays.copyOfRange(lastBytes, packet.position(), lastBytes.length) : null;
+
+            // Screen needs to know only result of resuming, not tokens after log in
+            if (!this.resuming) {
+              continue;
+            }
+
+            this.resuming = false;
+          }
+
+          if (requestId != 0) {
+            ResponseFuture future = this.pendingRequests.remove(requestId);
+
+            // Only first response completes request, next responses are passed to screen
+            if (future != null) {
+              future.complete(new ResponseFuture.Response(code, packet));
+              continue;
+            }
+          }
+
+          this.currentScreen.onMessage(code, packet);
         }
       }
     }
@@ -180,11 +288,186 @@ public class Client {
 
   protected void sendLoop() {
     while (this.isConnected()) {
-      if (this.sendBytes.size() == 0) {
+      if (this.handshaking || this.sendBytes.size() == 0) {
+        continue;
+      }
+
+      if (!this.batching) {
+        this.sendBlocking(this.sendBytes.poll());
+        continue;
+      }
+
+      if (Client.BATCH_WINDOW > 0) {
+        // Packets, queued during window, are sent in one frame
+        try {
+          Thread.sleep(Client.BATCH_WINDOW);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      this.sendBatch();
+    }
+  }
+
+  /**
+   * Sends queued packets in one {@link Batch}, until it becomes bigger than
+   * {@link Batch#MAX_SIZE}. Single packet is sent as is.
+   */
+  protected void sendBatch() {
+    ArrayList<byte[]> packets = new ArrayList<>();
+    int size = Batch.HEADER_SIZE;
+
+    while (size < Batch.MAX_SIZE && packets.size() < Batch.MAX_PACKETS) {
+      byte[] packet = this.sendBytes.poll();
+
+      if (packet == null) {
+        break;
+      }
+
+      packets.add(packet);
+      size += Batch.ENTRY_HEADER_SIZE + packet.length;
+    }
+
+    if (packets.size() == 1) {
+      this.sendBlocking(packets.get(0));
+    } else if (!packets.isEmpty()) {
+      this.sendBlocking(Batch.pack(Batch.CLIENT_CODE, packets));
+    }
+  }
+
+  /**
+   * Sends suites from {@link Client#CIPHER_SUITES} to server, so it chooses one of them. Other
+   * packets are not sent until server replies.
+   */
+  protected void sendHello() {
+    CipherSuite[] suites = CipherSuite.parseList(Client.CIPHER_SUITES);
+    ByteBuffer buffer = ByteBuffer.allocate(2 + 1 + suites.length + 1).putShort((short) 6)
+        .put((byte) suites.length);
+
+    for (CipherSuite suite : suites) {
+      buffer.put(suite.id);
+    }
+
+    buffer.put((byte) ((Client.COMPRESSION ? Compression.FEATURE : 0)
+        | (Client.BATCHING ? Batch.FEATURE : 0)
+        | (Client.COMPACT_ENCODING ? CompactEncoding.FEATURE : 0)));
+    this.cipherSuite = CipherSuite.AES_GCM;
+    this.compression = false;
+    this.batching = false;
+    this.compactEncoding = false;
+    this.resuming = this.sessionToken != null;
+    this.handshaking = true;
+    this.writeFrame(buffer.array());
+  }
+
+  /**
+   * Switches to cipher suite, chosen by server, and enables compression, batches and compact
+   * encoding, if server agreed.
+   *
+   * @param buffer Reply to hello without operation code.
+   */
+  protected void onHelloReply(ByteBuffer buffer) {
+    CipherSuite suite = CipherSuite.fromId(buffer.get());
+
+    if (suite == null) {
+      this.game.logger.warning("Server chose unknown cipher suite, reconnecting");
+      this.socket.dispose();
+      return;
+    }
+
+    this.cipherSuite = suite;
+    // Older servers don't send features
+    byte features = buffer.hasRemaining() ? buffer.get() : 0;
+    this.compression = (features & Compression.FEATURE) != 0;
+    this.batching = Client.BATCHING && (features & Batch.FEATURE) != 0;
+    this.compactEncoding = (features & CompactEncoding.FEATURE) != 0;
+    byte[] token = this.sessionToken;
+
+    // Sent before queued packets, so they are sent, when account is already known
+    if (this.resuming && token != null) {
+      this.writeFrame(ByteBuffer.allocate(2 + token.length).putShort((short) 7).put(token)
+          .array());
+    }
+
+    this.handshaking = false;
+    this.game.logger.fine("Using cipher suite " + suite.configName
+        + (this.compression ? " with compression" : ""));
+  }
+
+  /**
+   * Checks is session from previous connection being resumed. Screen gets result of it as
+   * message with code 14 (resumed) or 15 (not resumed, log in is needed).
+   *
+   * @return {@code true} if server didn't reply to session token yet.
+   */
+  public boolean isResuming() {
+    return this.resuming;
+  }
+
+  /**
+   * Checks, are messages and users from server encoded with {@link CompactEncoding}.
+   *
+   * @return {@code true} if server agreed to use compact encoding.
+   */
+  public boolean isCompactEncoding() {
+    return this.compactEncoding;
+  }
+
+  /**
+   * Closes connection after random delay, so {@link Client#receiveLoop()} reconnects. Used, when
+   * server is going to stop.
+   *
+   * @param maxDelay Maximum delay in milliseconds.
+   */
+  protected void reconnectLater(int maxDelay) {
+    this.game.logger.info("Server is restarting, reconnecting");
+    Socket currentSocket = this.socket;
+    int delay = ThreadLocalRandom.current().nextInt(Math.max(1, maxDelay));
+    // If server closes connection earlier, reconnectLoop() still waits until this time
+    this.reconnectAfter = System.currentTimeMillis() + delay;
+    Thread thread = new Thread(() -> {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      if (this.socket == currentSocket && currentSocket != null) {
+        currentSocket.dispose();
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sends ping every {@link Client#KEEPALIVE_INTERVAL} seconds. If nothing was received from
+   * server for {@link Client#KEEPALIVE_TIMEOUT} seconds, connection is considered half-open and
+   * socket is closed, so {@link Client#receiveLoop()} starts reconnecting.
+   */
+  protected void keepaliveLoop() {
+    while (!this.closing) {
+      try {
+        Thread.sleep(Client.KEEPALIVE_INTERVAL * 1000L);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      Socket currentSocket = this.socket;
+
+      if (currentSocket == null || !this.isConnected() || this.reconnecting) {
         continue;
       }
 
-      this.sendBlocking(this.sendBytes.poll());
+      if (System.currentTimeMillis() - this.lastReceiveTime > Client.KEEPALIVE_TIMEOUT * 1000L) {
+        this.game.logger.warning("Server doesn't respond, reconnecting");
+        currentSocket.dispose();
+        continue;
+      }
+
+      //noinspection ObjectAllocationInLoop
+      this.send(ByteBuffer.allocate(2 + 8).putShort((short) 5).putLong(System.currentTimeMillis()));
     }
   }
 
@@ -219,8 +502,10 @@ public class Client {
       return;
     }
 
+    this.lastReceiveTime = System.currentTimeMillis();
     this.inputStream = new DataInputStream(this.socket.getInputStream());
     this.outputStream = new DataOutputStream(this.socket.getOutputStream());
+    this.sendHello();
     this.receiveThread = new Thread(this::receiveLoop);
     this.sendThread = new Thread(this::sendLoop);
     this.receiveThread.start();
@@ -271,14 +556,32 @@ public class Client {
    * @param bytes Data to be sent.
    */
   public void sendBlocking(byte[] bytes) {
+    if (this.handshaking) {
+      // Server doesn't know suite yet, packet will be sent after handshake
+      this.send(bytes);
+      return;
+    }
+
+    this.writeFrame(bytes);
+  }
+
+  /**
+   * Encrypts packet with current suite and writes it, even during handshake.
+   *
+   * @param bytes Data to be sent.
+   */
+  protected void writeFrame(byte[] bytes) {
     try {
-      byte[] encryptedBytes = Aes.encrypt(bytes);
-      this.outputStream.writeInt(encryptedBytes.length);
-      this.outputStream.write(encryptedBytes);
+      // Length and encrypted packet are sealed into one array, so they are written at once
+      byte[] packet = this.compression ? Compression.compress(bytes) : bytes;
+      int encryptedSize = Aes.encryptedSize(packet.length);
+      ByteBuffer frame = ByteBuffer.allocate(4 + encryptedSize).putInt(encryptedSize);
+      this.cipherSuite.encrypt(ByteBuffer.wrap(packet), frame);
+      this.outputStream.write(frame.array());
       this.outputStream.flush();
     } catch (InvalidAlgorithmParameterException | NoSuchPaddingException
              | IllegalBlockSizeException | NoSuchAlgorithmException | BadPaddingException
-             | InvalidKeyException | IOException e) {
+             | InvalidKeyException | ShortBufferException | IOException e) {
       this.game.logException(e);
     }
   }
@@ -295,6 +598,47 @@ public class Client {
     this.send(buffer.array());
   }
 
+  /**
+   * Sends request with unique identifier, see {@link RequestHeader}. Many requests can wait for
+   * response at the same time, responses can come in any order.
+   *
+   * @param bytes Request, that starts with operation code.
+   * @return Future, that is completed by first response to this request, or failed, when
+   *     connection is lost.
+   */
+  public ResponseFuture request(byte[] bytes) {
+    int requestId;
+
+    do {
+      requestId = this.lastRequestId.incrementAndGet() & Integer.MAX_VALUE;
+    } while (requestId == 0);
+
+    ResponseFuture future = new ResponseFuture(requestId);
+    this.pendingRequests.put(requestId, future);
+    this.send(RequestHeader.withRequestId(bytes, requestId));
+    return future;
+  }
+
+  public ResponseFuture request(ByteBuffer buffer) {
+    return this.request(buffer.array());
+  }
+
+  /**
+   * Fails all requests, that are waiting for response. Responses to requests, that are sent
+   * after this call, are passed to screen.
+   *
+   * @param error Reason of failure.
+   */
+  protected void failPendingRequests(Exception error) {
+    for (Integer requestId : this.pendingRequests.keySet()) {
+      ResponseFuture future = this.pendingRequests.remove(requestId);
+
+      if (future != null) {
+        future.fail(error);
+      }
+    }
+  }
+
   public boolean isConnected() {
     return this.socket != null && this.socket.isConnected();
   }
@@ -312,6 +656,10 @@ public class Client {
       this.socket = null;
     }
 
+    if (this.keepaliveThread != null) {
+      this.keepaliveThread.interrupt();
+    }
+
     try {
       if (this.sendThread != null) {
         this.sendThread.join();
@@ -30,6 +30,9 @@ import java.util.Locale;
  */
 public class ContactsScreen extends DefaultScreen {
 
+  public static final int HISTORY_LIMIT = Config.get("network.historyLimit", 500);
+  public static final int HISTORY_PAGE_SIZE = Config.get("network.historyPageSize", 50);
+
   public long currentUser = 0;
   public boolean changedUser = false;
   ArrayList<FormattedMessage> formattedMessages = new ArrayList<>(64);
@@ -41,8 +44,7 @@ public class ContactsScreen extends DefaultScreen {
   TextField messageArea;
   ScrollPane messagesPane;
   Table usersTable;
-  Runnable unblockFunction;
-  String addLogin;
+  boolean pageRequested = false;
 
   /**
    * Default constructor for {@code DefaultScreen}.
@@ -56,6 +58,16 @@ public class ContactsScreen extends DefaultScreen {
 
   @Override
   void onUpdate(float delta) {
+    if (this.changedUser && !this.pageRequested && this.messagesPane != null
+        && this.messagesPane.getScrollY() <= 0
+        && !this.game.history.isComplete(this.currentUser)) {
+      // Older messages are loaded, when user scrolls to the top of conversation
+      this.pageRequested = true;
+      this.game.client.send(ByteBuffer.allocate(2 + 8 + 8 + 2).putShort((short) 9)
+          .putLong(this.currentUser)
+          .putLong(this.game.history.getOldestMessageId(this.currentUser))
+          .putShort((short) ContactsScreen.HISTORY_PAGE_SIZE));
+    }
   }
 
   @Override
@@ -65,7 +77,9 @@ public class ContactsScreen extends DefaultScreen {
 
   @Override
   public void init() {
-    this.game.client.send(ByteBuffer.allocate(2).putShort((short) 2));
+    this.users = this.game.history.users;
+    this.allMessages = this.game.history.messages;
+    this.requestHistory();
 
     this.messagesTable = new Table();
     this.messagesTable.left().top();
@@ -113,14 +127,16 @@ public class ContactsScreen extends DefaultScreen {
         buffer.putLong(ContactsScreen.this.currentUser);
         buffer.putShort((short) messageBytes.length);
         buffer.put(messageBytes);
-        ContactsScreen.this.game.client.send(buffer);
+        // Identifier is set, when server acknowledges message
+        Message message = new Message(0, ContactsScreen.this.currentUser, true, text);
+        ContactsScreen.this.game.client.request(buffer).then((response, error) ->
+            ContactsScreen.this.networkHandlerQueue.add(
+                () -> ContactsScreen.this.onMessageAcknowledged(message, response)));
         messageArea.setText("");
 
         Table table = new Table();
         table.center().right();
-        ContactsScreen.this.formattedMessages.add(
-            new FormattedMessage(new Message(0, ContactsScreen.this.currentUser, true, text),
-                table));
+        ContactsScreen.this.formattedMessages.add(new FormattedMessage(message, table));
         ContactsScreen.this.reformatMessages();
       }
     });
@@ -134,6 +150,101 @@ public class ContactsScreen extends DefaultScreen {
     sendMessageTable.setHeight(40);
     this.messageArea.setWidth(width - 362);
     this.game.stage.addActor(sendMessageTable);
+
+    if (this.game.history.loaded) {
+      // Local copy is shown right away, new messages are added, when server sends them
+      this.showHistory();
+    }
+  }
+
+  /**
+   * Requests history from server. If history is already loaded, only messages, that are newer
+   * than last known message, are requested.
+   */
+  public void requestHistory() {
+    if (this.game.history.loaded) {
+      this.game.client.send(ByteBuffer.allocate(2 + 8).putShort((short) 8)
+          .putLong(this.game.history.getLastMessageId()));
+    } else {
+      this.game.client.send(
+          ByteBuffer.allocate(2 + 4).putShort((short) 2).putInt(ContactsScreen.HISTORY_LIMIT));
+    }
+  }
+
+  /**
+   * Adds message of selected contact to shown messages, keeping them sorted by identifier. Sent
+   * messages, that are not confirmed by server yet, stay in the end.
+   *
+   * @param message Message to show.
+   */
+  public void addFormattedMessage(Message message) {
+    Table table = new Table();
+    table.center();
+
+    if (message.sentByMe) {
+      table.right();
+    } else {
+      table.left();
+    }
+
+    int index = this.formattedMessages.size();
+
+    while (index > 0) {
+      long id = this.formattedMessages.get(index - 1).message.id;
+
+      if (id != 0 && id < message.id) {
+        break;
+      }
+
+      index--;
+    }
+
+    this.formattedMessages.add(index, new FormattedMessage(message, table));
+  }
+
+  /**
+   * Shows list of contacts and messages of selected contact from {@link Messaje#history}.
+   */
+  public void showHistory() {
+    this.formattedMessages.clear();
+
+    if (this.changedUser) {
+      this.game.history.load(this.currentUser);
+    }
+
+    for (Message message : this.allMessages) {
+      if (this.changedUser && message.contactId != this.currentUser) {
+        continue;
+      }
+
+      Table table = new Table();
+      table.center();
+
+      if (message.sentByMe) {
+        table.right();
+      } else {
+        table.left();
+      }
+
+      this.formattedMessages.add(new FormattedMessage(message, table));
+      this.game.logger.fine(String.format(Locale.ENGLISH,
+          "Message. Id: %d, contact id: %d, sent by me: %s, text: '%s'", message.id,
+          message.contactId, message.sentByMe ? "true" : "false", message.text));
+    }
+
+    this.usersTable = new Table();
+    this.updateUsers();
+
+    usersTable.pack();
+    ScrollPane usersPane = new ScrollPane(usersTable, UiStyle.getScrollPaneStyle());
+    usersPane.setOverscroll(false, false);
+    usersPane.setFillParent(true);
+    this.usersPaneContainer.clear();
+    this.usersPaneContainer.left().add(usersPane).width(300);
+
+    if (this.changedUser) {
+      this.reformatMessages();
+    }
   }
 
   /**
@@ -222,6 +333,7 @@ public class ContactsScreen extends DefaultScreen {
         @Override
         public void changed(ChangeEvent event, Actor actor) {
           ContactsScreen.this.formattedMessages.clear();
+          ContactsScreen.this.game.history.load(contactId);
 
           for (Message message : ContactsScreen.this.allMessages) {
             if (message.contactId != contactId) {
@@ -283,16 +395,23 @@ public class ContactsScreen extends DefaultScreen {
         addContactButton.addListener(new ChangeListener() {
           @Override
           public void changed(ChangeEvent event, Actor actor) {
-            ContactsScreen.this.unblockFunction = dialog::hide;
-
             closeButton.setDisabled(true);
             addContactButton.setDisabled(true);
             String addLogin = loginField.getText();
             byte[] loginBytes = addLogin.getBytes(StandardCharsets.UTF_8);
-            ContactsScreen.this.addLogin = addLogin;
-            ContactsScreen.this.game.client.sendBlocking(
+            ContactsScreen.this.game.client.request(
                 ByteBuffer.allocate(2 + 1 + loginBytes.length).putShort((short) 4)
-                    .put((byte) loginBytes.length).put(loginBytes));
+                    .put((byte) loginBytes.length).put(loginBytes)).then((response, error) ->
+                ContactsScreen.this.networkHandlerQueue.add(() -> {
+                  dialog.hide();
+
+                  if (response == null) {
+                    ContactsScreen.this.warning("User not added",
+                        "Connection to server is lost, try to add user again");
+                  } else {
+                    ContactsScreen.this.onContactFound(addLogin, response);
+                  }
+                }));
           }
         });
         buttonsTable.add(addContactButton).fillX().padLeft(6).width(200);
@@ -304,104 +423,196 @@ public class ContactsScreen extends DefaultScreen {
     usersTable.add(button).width(300 - 18).height(40);
   }
 
+  /**
+   * Adds contact to list of users. Called with response to request of operation code 4.
+   *
+   * @param login    Login of contact.
+   * @param response {@code 8} with identifier of contact, or {@code 9} if contact isn't found.
+   */
+  public void onContactFound(String login, ResponseFuture.Response response) {
+    if (response.code == 9) {
+      this.game.logger.warning("User not found");
+      this.warning("User not added", "User with specified login isn't found");
+      return;
+    }
+
+    long userId = response.buffer.getLong();
+
+    for (User user : this.users) {
+      if (user.id == userId) {
+        this.game.logger.warning("User already added");
+        this.warning("User not added",
+            "User already added to contacts list, so it's not added again");
+        return;
+      }
+    }
+
+    this.game.history.addUser(new User(userId, login));
+    this.updateUsers();
+    this.currentUser = userId;
+  }
+
+  /**
+   * Sets identifier of sent message. Called with response to request of operation code 3.
+   *
+   * @param message  Sent message.
+   * @param response {@code [18][long messageId]}, or {@code null} if connection is lost.
+   */
+  public void onMessageAcknowledged(Message message, ResponseFuture.Response response) {
+    long messageId = response == null ? 0 : response.buffer.getLong();
+
+    if (messageId == 0) {
+      this.formattedMessages.removeIf(formattedMessage -> formattedMessage.message == message);
+      this.reformatMessages();
+
+      if (response == null) {
+        // Message could be saved before connection was lost, then it comes with history
+        this.warning("Message may be not sent",
+            "Connection to server was lost, message will be shown, if server received it");
+      } else {
+        this.warning("Message not sent", "Server couldn't save message, try to send it again");
+      }
+
+      return;
+    }
+
+    message.id = messageId;
+
+    if (!this.game.history.addMessage(message)) {
+      // Message was already received with history, so it's shown twice
+      this.formattedMessages.removeIf(formattedMessage -> formattedMessage.message == message);
+      this.reformatMessages();
+    }
+  }
+
   @Override
   public void onReconnect() {
-    this.changeScreen(new LoginScreen(this.game));
+    // With session token screen is kept, until server replies to it
+    if (!this.game.client.isResuming()) {
+      this.changeScreen(new LoginScreen(this.game));
+    }
   }
 
   @Override
   protected void onMessageMain(int code, ByteBuffer serverMessage) {
-    if (code == 7) {
+    if (code == 14) {
+      // Session resumed, messages, received while client was disconnected, are loaded
+      this.requestHistory();
+    } else if (code == 15) {
+      this.changeScreen(new LoginScreen(this.game));
+    } else if (code == 7) {
       this.game.logger.fine(String.valueOf(serverMessage.position()));
+      MessageHistory history = this.game.history;
+      // Full history replaces local copy
+      history.clear();
       int usersCount = serverMessage.getInt();
-      this.users = new ArrayList<>(usersCount);
 
       for (int i = 0; i < usersCount; i++) {
-        User user = new User().fromBytes(serverMessage);
-        this.users.add(user);
+        history.addUser(this.readUser(serverMessage));
       }
 
       int messagesCount = serverMessage.getInt();
-      this.allMessages = new ArrayList<>(messagesCount);
+      // Text is decoded only for conversations, that are opened
+      history.addMessages(new MessageView(serverMessage, messagesCount,
+          this.game.client.isCompactEncoding()));
+
+      history.loaded = true;
+      history.complete = ContactsScreen.HISTORY_LIMIT <= 0;
+      this.showHistory();
+    } else if (code == 16) {
+      MessageHistory history = this.game.history;
+      int usersCount = serverMessage.getInt();
+      boolean addedUsers = false;
 
-      for (int i = 0; i < messagesCount; i++) {
-        Message message = new Message().fromBytes(serverMessage);
-        boolean added = false;
+      for (int i = 0; i < usersCount; i++) {
+        addedUsers |= history.addUser(this.readUser(serverMessage));
+      }
 
-        for (int j = 0; j < this.allMessages.size(); j++) {
-          Message existingMessage = this.allMessages.get(j);
+      int messagesCount = serverMessage.getInt();
+      boolean addedMessages = false;
+      ArrayList<Message> messages = history.addMessages(new MessageView(serverMessage,
+          messagesCount, this.game.client.isCompactEncoding()));
 
-          if (existingMessage.id > message.id) {
-            this.allMessages.add(j, message);
-            added = true;
-            break;
-          }
+      for (Message message : messages) {
+        if (this.changedUser && message.contactId != this.currentUser) {
+          continue;
         }
 
-        if (!added) {
-          this.allMessages.add(message);
-        }
+        this.addFormattedMessage(message);
+        addedMessages = true;
       }
 
-      for (Message message : this.allMessages) {
-        Table table = new Table();
-        table.center();
-
-        if (message.sentByMe) {
-          table.right();
-        } else {
-          table.left();
-        }
+      if (addedUsers) {
+        this.updateUsers();
+      }
 
-        this.formattedMessages.add(new FormattedMessage(message, table));
-        this.game.logger.fine(String.format(Locale.ENGLISH,
-            "Message. Id: %d, contact id: %d, sent by me: %s, text: '%s'", message.id,
-            message.contactId, message.sentByMe ? "true" : "false", message.text));
+      if (addedMessages && this.changedUser) {
+        this.reformatMessages();
       }
+    } else if (code == 17) {
+      long contactId = serverMessage.getLong();
+      boolean hasMore = serverMessage.get() != 0;
+      int messagesCount = serverMessage.getInt();
+      boolean addedMessages = false;
+      long previousId = 0;
 
-      this.usersTable = new Table();
-      this.updateUsers();
-
-      usersTable.pack();
-      ScrollPane usersPane = new ScrollPane(usersTable, UiStyle.getScrollPaneStyle());
-      usersPane.setOverscroll(false, false);
-      usersPane.setFillParent(true);
-      Table table2 = new Table();
-      this.usersPaneContainer.left().add(usersPane).width(300);
-    } else if (code == 8) {
-      long userId = serverMessage.getLong();
-
-      for (User user : this.users) {
-        if (user.id == userId) {
-          this.unblockFunction.run();
-          this.game.logger.warning("User already added");
-          this.warning("User not added",
-              "User already added to contacts list, so it's not added again");
-          return;
+      for (int i = 0; i < messagesCount; i++) {
+        Message message = this.readMessage(serverMessage, previousId);
+        previousId = message.id;
+
+        if (this.game.history.addMessage(message) && contactId == this.currentUser) {
+          this.addFormattedMessage(message);
+          addedMessages = true;
         }
       }
 
-      this.users.add(new User(userId, this.addLogin));
-      this.updateUsers();
-      this.currentUser = userId;
-      this.unblockFunction.run();
-    } else if (code == 9) {
-      this.game.logger.warning("User not found");
-      this.warning("User not added", "User with specified login isn't found");
-      this.unblockFunction.run();
+      if (!hasMore) {
+        this.game.history.setComplete(contactId);
+      }
+
+      this.pageRequested = false;
+
+      if (addedMessages) {
+        // Older messages are added above, so visible messages stay on their place
+        float scrollFromBottom = this.messagesPane.getMaxY() - this.messagesPane.getScrollY();
+        this.reformatMessages();
+        this.messagesPane.layout();
+        this.messagesPane.setScrollY(this.messagesPane.getMaxY() - scrollFromBottom);
+        this.messagesPane.updateVisualScroll();
+      }
     } else if (code == 10) {
-      Message message = new Message().fromBytes(serverMessage);
-      allMessages.add(message);
+      Message message = this.readMessage(serverMessage, 0);
 
-      if (this.currentUser == message.contactId) {
-        Table table = new Table();
-        table.center().left();
-        ContactsScreen.this.formattedMessages.add(new FormattedMessage(message, table));
-        ContactsScreen.this.reformatMessages();
+      if (this.game.history.addMessage(message) && this.currentUser == message.contactId) {
+        this.addFormattedMessage(message);
+        this.reformatMessages();
       }
     }
   }
 
+  /**
+   * Reads user in encoding, that was chosen during handshake.
+   *
+   * @param buffer Packet from server.
+   * @return Read user.
+   */
+  protected User readUser(ByteBuffer buffer) {
+    return this.game.client.isCompactEncoding()
+        ? new User().fromCompactBytes(buffer) : new User().fromBytes(buffer);
+  }
+
+  /**
+   * Reads message in encoding, that was chosen during handshake.
+   *
+   * @param buffer     Packet from server.
+   * @param previousId Identifier of previous message in packet, or {@code 0}.
+   * @return Read message.
+   */
+  protected Message readMessage(ByteBuffer buffer, long previousId) {
+    return this.game.client.isCompactEncoding()
+        ? new Message().fromCompactBytes(buffer, previousId) : new Message().fromBytes(buffer);
+  }
+
   @Override
   public void onDisconnect() {
 
@@ -24,6 +24,7 @@ import java.security.NoSuchAlgorithmException;
 public class LoginScreen extends DefaultScreen {
 
   static final byte[] PEPPER = Utils.hexToBytes(Config.get("password.pepper", "69D029BE4D8E0C42"));
+  String login;
 
   /**
    * Default constructor for {@code DefaultScreen}.
@@ -102,6 +103,7 @@ public class LoginScreen extends DefaultScreen {
           return;
         }
 
+        LoginScreen.this.login = loginText;
         int loginLength = loginBytes.length;
         ByteBuffer buffer = ByteBuffer.allocate(2 + 1 + loginLength + hashedPassword.length);
         buffer.putShort((short) 0);
@@ -141,6 +143,7 @@ public class LoginScreen extends DefaultScreen {
           return;
         }
 
+        LoginScreen.this.login = loginText;
         int loginLength = loginBytes.length;
         ByteBuffer buffer = ByteBuffer.allocate(2 + 1 + loginLength + hashedPassword.length);
         buffer.putShort((short) 1);
@@ -218,7 +221,10 @@ public class LoginScreen extends DefaultScreen {
   @Override
   protected void onMessageMain(int code, ByteBuffer message) {
     switch (code) {
-      case 0, 6 -> this.changeScreen(new ContactsScreen(this.game));
+      case 0, 6 -> {
+        this.game.history.setOwner(this.login);
+        this.changeScreen(new ContactsScreen(this.game));
+      }
       case 1 -> this.warning("Unknown error", "Unknown error occurred in server");
       case 2 -> this.warning("Login already used", "Account with specified login already exists");
       case 3 -> this.warning("Unknown login length", "Login is too short or too long");
@@ -235,6 +241,9 @@ public class LoginScreen extends DefaultScreen {
       }
       case 5 -> this.warning("Invalid login or password",
           "Account with specified login and password doesn't exist");
+      // Result of resuming session, that was started before this screen
+      case 14, 15 -> {
+      }
       default -> this.warning("Invalid message from server",
           "Received message, that shouldn't be received");
     }
@@ -0,0 +1,240 @@
+package com.werryxgames.messaje;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Local copy of contacts and messages of logged in account. It's kept, while application is
+ * running, so after reconnecting only new messages are requested from server.
+ *
+ * <p>Messages, added with {@link MessageHistory#addMessages(MessageView)}, stay in received
+ * packets, until conversation with their contact is loaded with
+ * {@link MessageHistory#load(long)}, so {@link MessageHistory#messages} has only messages of
+ * loaded conversations.
+ *
+ * @since 1.0
+ */
+public class MessageHistory {
+
+  public ArrayList<User> users = new ArrayList<>(16);
+  public ArrayList<Message> messages = new ArrayList<>(64);
+  public boolean loaded = false;
+  // true, if all messages of all contacts are loaded
+  public boolean complete = false;
+  // Contacts, whose oldest message is loaded
+  protected HashSet<Long> completeContacts = new HashSet<>(16);
+  // Received packets with messages, that are not in messages yet. Packet is removed, when
+  // conversations of all it's contacts are loaded, so it's memory is freed
+  protected ArrayList<MessageView> views = new ArrayList<>(4);
+  // Contacts, whose messages were moved from views to messages
+  protected HashSet<Long> loadedContacts = new HashSet<>(16);
+  protected String owner = null;
+
+  /**
+   * Sets login of account, that history belongs to. If it's different from previous login,
+   * history is cleared.
+   *
+   * @param login Login of account.
+   */
+  public void setOwner(String login) {
+    if (!Objects.equals(this.owner, login)) {
+      this.clear();
+      this.owner = login;
+    }
+  }
+
+  /**
+   * Removes all users and messages.
+   */
+  public void clear() {
+    this.users.clear();
+    this.messages.clear();
+    this.completeContacts.clear();
+    this.views.clear();
+    this.loadedContacts.clear();
+    this.loaded = false;
+    this.complete = false;
+  }
+
+  /**
+   * Returns identifier of newest message, that was received from server.
+   *
+   * @return Identifier of message, or {@code 0} if there are no messages.
+   */
+  public long getLastMessageId() {
+    long lastId = this.messages.isEmpty() ? 0 : this.messages.get(this.messages.size() - 1).id;
+
+    for (MessageView view : this.views) {
+      lastId = Math.max(lastId, view.getMaxId());
+    }
+
+    return lastId;
+  }
+
+  /**
+   * Returns identifier of oldest loaded message of conversation with contact.
+   *
+   * @param contactId Identifier of contact.
+   * @return Identifier of message, or {@code 0} if there are no messages.
+   */
+  public long getOldestMessageId(long contactId) {
+    this.load(contactId);
+
+    for (Message message : this.messages) {
+      if (message.contactId == contactId) {
+        return message.id;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Checks, are all messages of conversation with contact loaded.
+   *
+   * @param contactId Identifier of contact.
+   * @return {@code true} if there are no older messages on server.
+   */
+  public boolean isComplete(long contactId) {
+    return this.complete || this.completeContacts.contains(contactId);
+  }
+
+  /**
+   * Marks, that all messages of conversation with contact are loaded.
+   *
+   * @param contactId Identifier of contact.
+   */
+  public void setComplete(long contactId) {
+    this.completeContacts.add(contactId);
+  }
+
+  /**
+   * Adds user, if there is no user with same identifier.
+   *
+   * @param user User to add.
+   * @return {@code true} if user was added.
+   */
+  public boolean addUser(User user) {
+    for (User existingUser : this.users) {
+      if (existingUser.id == user.id) {
+        return false;
+      }
+    }
+
+    return this.users.add(user);
+  }
+
+  /**
+   * Moves messages of conversation with contact from received packets to
+   * {@link MessageHistory#messages}, decoding their text. Does nothing, if conversation is
+   * already loaded.
+   *
+   * @param contactId Identifier of contact.
+   */
+  public void load(long contactId) {
+    if (!this.loadedContacts.add(contactId)) {
+      return;
+    }
+
+    Iterator<MessageView> iterator = this.views.iterator();
+
+    while (iterator.hasNext()) {
+      MessageView view = iterator.next();
+
+      if (!view.hasContact(contactId)) {
+        continue;
+      }
+
+      for (int i = 0; i < view.size(); i++) {
+        if (view.getContactId(i) == contactId) {
+          //noinspection ObjectAllocationInLoop
+          this.insertMessage(view.get(i));
+        }
+      }
+
+      if (this.isLoaded(view)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Checks, are messages of all contacts in view already moved to {@link MessageHistory#messages}.
+   *
+   * @param view Messages in received packet.
+   * @return {@code true} if view isn't needed anymore.
+   */
+  protected boolean isLoaded(MessageView view) {
+    for (long contactId : view.getContacts()) {
+      if (!this.loadedContacts.contains(contactId)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds messages from received packet. Messages of loaded conversations are added right away,
+   * text of other messages is decoded, when their conversation is loaded.
+   *
+   * @param view Messages in received packet.
+   * @return Added messages of loaded conversations.
+   */
+  public ArrayList<Message> addMessages(MessageView view) {
+    ArrayList<Message> addedMessages = new ArrayList<>(0);
+
+    for (int i = 0; i < view.size(); i++) {
+      if (this.loadedContacts.contains(view.getContactId(i))) {
+        //noinspection ObjectAllocationInLoop
+        Message message = view.get(i);
+
+        if (this.insertMessage(message)) {
+          addedMessages.add(message);
+        }
+      }
+    }
+
+    if (!this.isLoaded(view)) {
+      this.views.add(view);
+    }
+
+    return addedMessages;
+  }
+
+  /**
+   * Adds message, keeping messages sorted by identifier. Message with already known identifier
+   * is skipped.
+   *
+   * @param message Message to add.
+   * @return {@code true} if message was added.
+   */
+  public boolean addMessage(Message message) {
+    // Same message can be in packet, that isn't loaded yet
+    this.load(message.contactId);
+    return this.insertMessage(message);
+  }
+
+  protected boolean insertMessage(Message message) {
+    int low = 0;
+    int high = this.messages.size() - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleId = this.messages.get(middle).id;
+
+      if (middleId < message.id) {
+        low = middle + 1;
+      } else if (middleId > message.id) {
+        high = middle - 1;
+      } else {
+        return false;
+      }
+    }
+
+    this.messages.add(low, message);
+    return true;
+  }
+}
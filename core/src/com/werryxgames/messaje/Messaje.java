@@ -31,6 +31,7 @@ public class Messaje extends Game {
   public OrthographicCamera camera;
   public SpriteBatch batch;
   public Client client;
+  public MessageHistory history = new MessageHistory();
   public ScreenViewport viewport;
   public Stage stage;
 
@@ -0,0 +1,173 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of request, sent with {@link Client#request(ByteBuffer)}. It's completed by network
+ * thread, when first packet with identifier of request is received.
+ *
+ * @since 1.0
+ */
+public class ResponseFuture implements Future<ResponseFuture.Response> {
+
+  public final int requestId;
+  protected Response response = null;
+  protected Exception error = null;
+  protected boolean done = false;
+  protected Listener listener = null;
+
+  public ResponseFuture(int requestId) {
+    this.requestId = requestId;
+  }
+
+  /**
+   * Sets listener, that is called in network thread, when request is completed. If request is
+   * already completed, listener is called right away.
+   *
+   * @param listener Listener of result.
+   * @return This future.
+   */
+  public ResponseFuture then(Listener listener) {
+    synchronized (this) {
+      if (!this.done) {
+        this.listener = listener;
+        return this;
+      }
+    }
+
+    listener.onResponse(this.response, this.error);
+    return this;
+  }
+
+  /**
+   * Completes request with response from server.
+   *
+   * @param response Received response.
+   * @return {@code false} if request was already completed.
+   */
+  public boolean complete(Response response) {
+    return this.finish(response, null);
+  }
+
+  /**
+   * Completes request with error, for example when connection is lost.
+   *
+   * @param error Reason of failure.
+   * @return {@code false} if request was already completed.
+   */
+  public boolean fail(Exception error) {
+    return this.finish(null, error);
+  }
+
+  protected boolean finish(Response response, Exception error) {
+    Listener currentListener;
+
+    synchronized (this) {
+      if (this.done) {
+        return false;
+      }
+
+      this.response = response;
+      this.error = error;
+      this.done = true;
+      currentListener = this.listener;
+      this.notifyAll();
+    }
+
+    if (currentListener != null) {
+      currentListener.onResponse(response, error);
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return this.done;
+  }
+
+  @Override
+  public synchronized Response get() throws InterruptedException, ExecutionException {
+    while (!this.done) {
+      this.wait();
+    }
+
+    return this.getResult();
+  }
+
+  @Override
+  public synchronized Response get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+    while (!this.done) {
+      long remaining = deadline - System.nanoTime();
+
+      if (remaining <= 0) {
+        throw new TimeoutException("No response to request " + this.requestId);
+      }
+
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+
+    return this.getResult();
+  }
+
+  protected Response getResult() throws ExecutionException {
+    if (this.error != null) {
+      throw new ExecutionException(this.error);
+    }
+
+    return this.response;
+  }
+
+  /**
+   * Listener of request result.
+   *
+   * @since 1.0
+   */
+  public interface Listener {
+    /**
+     * Called, when request is completed.
+     *
+     * @param response Response, or {@code null} if request failed.
+     * @param error    Reason of failure, or {@code null} if response is received.
+     */
+    void onResponse(Response response, Exception error);
+  }
+
+  /**
+   * Packet from server, that is response to request.
+   *
+   * @since 1.0
+   */
+  public static class Response {
+    public final short code;
+    public final ByteBuffer buffer;
+
+    /**
+     * Constructor for {@link Response}.
+     *
+     * @param code   Operation code of response.
+     * @param buffer Response without operation code and request identifier.
+     */
+    public Response(short code, ByteBuffer buffer) {
+      this.code = code;
+      this.buffer = buffer;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.werryxgames.messaje;
+
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides, can accepted connection become {@link Client}. Limits total number of connections,
+ * number of connections from one IP address and rate of accepted connections (token bucket).
+ * Limits can be changed at any time.
+ *
+ * @since 1.0
+ */
+public class AdmissionController {
+  public volatile int maxConnections;
+  public volatile int maxConnectionsPerIp;
+  public volatile int acceptRate;
+  public volatile int acceptBurst;
+  public final AtomicLong rejectedByConnectionLimit = new AtomicLong();
+  public final AtomicLong rejectedByIpLimit = new AtomicLong();
+  public final AtomicLong rejectedByRate = new AtomicLong();
+  protected AtomicInteger connections = new AtomicInteger();
+  protected ConcurrentHashMap<InetAddress, AtomicInteger> ipConnections =
+      new ConcurrentHashMap<>();
+  protected double tokens;
+  protected long lastRefillTime = System.nanoTime();
+
+  /**
+   * Constructor for {@link AdmissionController}.
+   *
+   * @param maxConnections      Maximum number of connected clients.
+   * @param maxConnectionsPerIp Maximum number of connected clients with same IP address.
+   * @param acceptRate          Average number of accepted connections per second.
+   * @param acceptBurst         Number of connections, that can be accepted at once, if there were
+   *                            no connections for some time.
+   */
+  public AdmissionController(int maxConnections, int maxConnectionsPerIp, int acceptRate,
+      int acceptBurst) {
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerIp = maxConnectionsPerIp;
+    this.acceptRate = acceptRate;
+    this.acceptBurst = acceptBurst;
+    this.tokens = acceptBurst;
+  }
+
+  /**
+   * Checks all limits and, if connection is admitted, counts it. Every admitted connection must
+   * be released with {@link AdmissionController#release(InetAddress)}.
+   *
+   * @param address Address of connected client.
+   * @return {@code true} if connection is admitted, {@code false} if it must be closed.
+   */
+  public boolean tryAdmit(InetAddress address) {
+    if (!this.takeToken()) {
+      this.rejectedByRate.incrementAndGet();
+      return false;
+    }
+
+    if (this.connections.incrementAndGet() > this.maxConnections) {
+      this.connections.decrementAndGet();
+      this.rejectedByConnectionLimit.incrementAndGet();
+      return false;
+    }
+
+    AtomicInteger addressConnections = this.ipConnections.computeIfAbsent(address,
+        key -> new AtomicInteger());
+
+    if (addressConnections.incrementAndGet() > this.maxConnectionsPerIp) {
+      this.release(address);
+      this.rejectedByIpLimit.incrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Forgets connection, that was admitted earlier.
+   *
+   * @param address Address of disconnected client.
+   */
+  public void release(InetAddress address) {
+    this.connections.decrementAndGet();
+    this.ipConnections.computeIfPresent(address,
+        (key, count) -> count.decrementAndGet() <= 0 ? null : count);
+  }
+
+  /**
+   * Returns number of admitted connections.
+   *
+   * @return Number of connected clients.
+   */
+  public int size() {
+    return this.connections.get();
+  }
+
+  protected synchronized boolean takeToken() {
+    long now = System.nanoTime();
+    this.tokens = Math.min(this.acceptBurst,
+        this.tokens + (now - this.lastRefillTime) / 1e9 * this.acceptRate);
+    this.lastRefillTime = now;
+
+    if (this.tokens < 1) {
+      return false;
+    }
+
+    this.tokens--;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH,
+        "connections: %d, rejected by connection limit: %d, by IP limit: %d, by rate: %d",
+        this.connections.get(), this.rejectedByConnectionLimit.get(),
+        this.rejectedByIpLimit.get(), this.rejectedByRate.get());
+  }
+}
@@ -0,0 +1,83 @@
+package com.werryxgames.messaje;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * {@link Transport}, that runs {@link Client#receiveHandleLoop()} of every connected client in
+ * {@link Server#connectionExecutor}.
+ *
+ * @since 1.0
+ */
+public class BlockingTransport implements Transport {
+  public Server server;
+  public ServerSocket socket;
+
+  public BlockingTransport(Server server) {
+    this.server = server;
+  }
+
+  @Override
+  public void bind(String host, int port, int backlog) throws IOException {
+    this.socket = new ServerSocket(port, backlog, InetAddress.getByName(host));
+  }
+
+  @Override
+  public void acceptLoop() {
+    while (!this.socket.isClosed()) {
+      Socket clientSocket;
+      Client client;
+
+      try {
+        clientSocket = this.socket.accept();
+      } catch (IOException e) {
+        if (!this.socket.isClosed()) {
+          this.server.logException(e);
+        }
+
+        continue;
+      }
+
+      if (!this.server.admission.tryAdmit(clientSocket.getInetAddress())) {
+        this.server.logger.fine("Connection rejected (" + this.server.admission + ")");
+        this.closeRejected(clientSocket);
+        continue;
+      }
+
+      try {
+        //noinspection ObjectAllocationInLoop
+        client = new Client(this.server, new SocketConnection(clientSocket,
+            this.server.connectionExecutor, this.server.outboundPolicy,
+            new FrameDecoder(this.server.maxFrameSize, this.server.bufferPool)));
+      } catch (IOException e) {
+        this.server.logException(e);
+        this.server.admission.release(clientSocket.getInetAddress());
+        this.closeRejected(clientSocket);
+        continue;
+      }
+
+      this.server.sessions.add(client);
+      this.server.connectionExecutor.execute(client::receiveHandleLoop);
+      this.server.logger.info("Client connected");
+    }
+  }
+
+  protected void closeRejected(Socket clientSocket) {
+    try {
+      clientSocket.close();
+    } catch (IOException e) {
+      this.server.logException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.socket.close();
+    } catch (IOException e) {
+      this.server.logException(e);
+    }
+  }
+}
@@ -1,11 +1,9 @@
 package com.werryxgames.messaje;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.Socket;
+import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
@@ -16,12 +14,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Locale;
+import java.util.Collection;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.DataFormatException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 
 /**
  * Class for connected client.
@@ -29,36 +35,41 @@ import javax.crypto.NoSuchPaddingException;
  * @since 1.0
  */
 public class Client {
+  protected static final Object FAN_OUT_LANE = new Object();
+  // Request, that is handled by current thread, see Client#handleRequest(int, Runnable)
+  protected static final ThreadLocal<Request> currentRequest = new ThreadLocal<>();
 
   public Server server;
-  public Socket socket;
-  public DataInputStream inputStream;
-  public DataOutputStream outputStream;
-  protected ConcurrentLinkedQueue<byte[]> packets = new ConcurrentLinkedQueue<>();
-  protected long accountId = 0;
+  public Connection connection;
+  protected ConcurrentLinkedQueue<ByteBuffer> packets = new ConcurrentLinkedQueue<>();
+  protected volatile long accountId = 0;
+  protected volatile long lastReceiveTime = System.currentTimeMillis();
+  protected ConcurrentHashMap<Object, SerialExecutor> lanes = new ConcurrentHashMap<>();
+  protected volatile CipherSuite cipherSuite = CipherSuite.AES_GCM;
+  // Enabled during handshake, see Compression
+  protected volatile boolean compression = false;
+  // Set during handshake, if client understands batches, see Batch
+  protected volatile boolean batching = false;
+  // Set during handshake, if client reads messages and users in CompactEncoding
+  protected volatile boolean compactEncoding = false;
+  // Packets, that wait for sendBatched() to send them in one batch
+  protected final ArrayList<byte[]> batchPackets = new ArrayList<>(8);
+  protected boolean batchLowPriority = true;
 
   /**
    * Constructor for {@link Client}.
    *
-   * @param server       Instance of {@link Server}.
-   * @param clientSocket Socket of connected client.
+   * @param server     Instance of {@link Server}.
+   * @param connection Connection with client.
    */
-  public Client(Server server, Socket clientSocket) {
+  public Client(Server server, Connection connection) {
     this.server = server;
-    this.socket = clientSocket;
-
-    try {
-      this.inputStream = new DataInputStream(clientSocket.getInputStream());
-      this.outputStream = new DataOutputStream(clientSocket.getOutputStream());
-    } catch (IOException e) {
-      this.server.logException(e);
-    }
-
-    new Thread(this::receiveHandleLoop).start();
+    this.connection = connection;
   }
 
   /**
-   * Handles message from client.
+   * Handles message from client, passing it to handler of it's operation code from
+   * {@link Server#handlers}.
    *
    * @param buffer Message from client.
    */
@@ -73,367 +84,655 @@ public class Client {
 
     this.server.logger.finest(stringBuilder.toString());
 
+    this.lastReceiveTime = System.currentTimeMillis();
+
+    if (buffer.remaining() < 2) {
+      this.server.logger.finer("Too short message from client: " + buffer.remaining() + " bytes");
+      return;
+    }
+
     short code = buffer.getShort();
+    int requestId = 0;
 
-    switch (code) {
-      case 0 -> {
-        int loginLength = buffer.get();
-        byte[] loginBytes = new byte[loginLength];
+    if (RequestHeader.hasRequestId(code)) {
+      if (buffer.remaining() < RequestHeader.REQUEST_ID_SIZE) {
+        this.server.logger.finer("Message from client has no request identifier");
+        return;
+      }
 
-        if (loginBytes.length > 64) {
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 3);
-          this.send(sendBuffer);
-          return;
-        }
+      requestId = buffer.getInt();
+      code = RequestHeader.getCode(code);
+    }
 
-        buffer.get(loginBytes);
-        String login = new String(loginBytes, StandardCharsets.UTF_8);
-        int loginMbLength = login.length();
+    if (!this.server.handlers.dispatch(this, code, requestId, buffer)) {
+      // FINER to prevent spamming from modified (or broken) client, slowing down the server
+      this.server.logger.finer("Unexpected operation code from client: " + code);
+    }
+  }
 
-        if (loginMbLength > 16 || loginMbLength < 3) {
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 3);
-          this.send(sendBuffer);
-          return;
-        }
+  /**
+   * Runs handler of request in current thread. Packets, that handler sends to this client, have
+   * identifier of request, so client can match them with request.
+   *
+   * @param requestId Identifier of request, or {@code 0} if client didn't set it.
+   * @param handler   Handler of request.
+   */
+  public void handleRequest(int requestId, Runnable handler) {
+    if (requestId == 0) {
+      handler.run();
+      return;
+    }
 
-        byte[] passwordHash = new byte[32];
-        buffer.get(passwordHash);
-        byte[] salt = new byte[8];
-        // Salt should be unique, not cryptographically secure
-        //noinspection UnsecureRandomNumberGeneration
-        new Random().nextBytes(salt);
-        byte[] saltedPassword;
+    Request previousRequest = Client.currentRequest.get();
+    Client.currentRequest.set(new Request(this, requestId));
 
-        try {
-          saltedPassword = MessageDigest.getInstance("SHA3-256").digest(
-              ByteBuffer.allocate(passwordHash.length + salt.length).put(passwordHash).put(salt)
-                  .array());
-        } catch (NoSuchAlgorithmException e) {
-          this.send(ByteBuffer.allocate(2).putShort((short) 1));
-          this.server.logException(e);
-          return;
-        }
+    try {
+      handler.run();
+    } finally {
+      if (previousRequest == null) {
+        Client.currentRequest.remove();
+      } else {
+        Client.currentRequest.set(previousRequest);
+      }
+    }
+  }
 
-        try (ResultSet userWithSameLogin = this.server.db.query(
-            "SELECT 1 FROM accounts WHERE login = ?", login)) {
-          if (userWithSameLogin == null) {
-            ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-            sendBuffer.putShort((short) 1);
-            this.send(sendBuffer);
-            return;
-          }
+  /**
+   * Registers new account and logs in to it (operation code 0).
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handleRegister(ByteBuffer buffer) {
+    int loginLength = buffer.get();
+    byte[] loginBytes = new byte[loginLength];
+
+    if (loginBytes.length > 64) {
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 3);
+      this.send(sendBuffer);
+      return;
+    }
 
-          if (userWithSameLogin.next()) {
-            ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-            sendBuffer.putShort((short) 2);
-            this.send(sendBuffer);
-            return;
-          }
-        } catch (SQLException e) {
-          this.server.logException(e);
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 1);
-          this.send(sendBuffer);
-          return;
-        }
+    buffer.get(loginBytes);
+    String login = new String(loginBytes, StandardCharsets.UTF_8);
+    int loginMbLength = login.length();
 
-        if (this.server.db.update(
-            "INSERT INTO accounts (login, passwordHash, passwordSalt) VALUES (?, ?, ?)",
-            login,
-            saltedPassword,
-            salt
-        ) < 1) {
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 1);
-          this.send(sendBuffer);
-          return;
-        }
+    if (loginMbLength > 16 || loginMbLength < 3) {
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 3);
+      this.send(sendBuffer);
+      return;
+    }
 
-        try (ResultSet accountId = this.server.db.query("SELECT id FROM accounts WHERE login = ?",
-            login)) {
-          accountId.next();
-          this.accountId = accountId.getLong(1);
-        } catch (SQLException e) {
-          this.server.logException(e);
-        }
+    byte[] passwordHash = new byte[32];
+    buffer.get(passwordHash);
+    byte[] salt = new byte[8];
+    // Salt should be unique, not cryptographically secure
+    //noinspection UnsecureRandomNumberGeneration
+    new Random().nextBytes(salt);
+    byte[] saltedPassword;
+
+    try {
+      saltedPassword = MessageDigest.getInstance("SHA3-256").digest(
+          ByteBuffer.allocate(passwordHash.length + salt.length).put(passwordHash).put(salt)
+              .array());
+    } catch (NoSuchAlgorithmException e) {
+      this.send(ByteBuffer.allocate(2).putShort((short) 1));
+      this.server.logException(e);
+      return;
+    }
 
+    try (ResultSet userWithSameLogin = this.server.db.query(
+        "SELECT 1 FROM accounts WHERE login = ?", login)) {
+      if (userWithSameLogin == null) {
         ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-        sendBuffer.putShort((short) 0);
+        sendBuffer.putShort((short) 1);
         this.send(sendBuffer);
-        this.server.logger.fine("New account has been created. Login: '" + login + "'");
+        return;
       }
-      case 1 -> {
-        int loginLength = buffer.get();
-        byte[] loginBytes = new byte[loginLength];
-
-        if (loginBytes.length > 64) {
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 3);
-          this.send(sendBuffer);
-          return;
-        }
 
-        buffer.get(loginBytes);
-        String login = new String(loginBytes, StandardCharsets.UTF_8);
+      if (userWithSameLogin.next()) {
+        ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+        sendBuffer.putShort((short) 2);
+        this.send(sendBuffer);
+        return;
+      }
+    } catch (SQLException e) {
+      this.server.logException(e);
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 1);
+      this.send(sendBuffer);
+      return;
+    }
 
-        if (login.length() > 16) {
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 3);
-          this.send(sendBuffer);
-          return;
-        }
+    if (this.server.db.update(
+        "INSERT INTO accounts (login, passwordHash, passwordSalt) VALUES (?, ?, ?)",
+        login,
+        saltedPassword,
+        salt
+    ) < 1) {
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 1);
+      this.send(sendBuffer);
+      return;
+    }
 
-        try (ResultSet specifiedUser = this.server.db.query(
-            "SELECT id, passwordHash, passwordSalt FROM accounts WHERE login = ?",
-            login)) {
-          if (!specifiedUser.next()) {
-            ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-            sendBuffer.putShort((short) 5);
-            this.send(sendBuffer);
-            return;
-          }
+    try (ResultSet accountId = this.server.db.query("SELECT id FROM accounts WHERE login = ?",
+        login)) {
+      accountId.next();
+      this.setAccountId(accountId.getLong(1));
+      this.sendSessionToken();
+    } catch (SQLException e) {
+      this.server.logException(e);
+    }
 
-          byte[] passwordHash = new byte[32];
-
-          buffer.get(passwordHash);
-          byte[] correctHash = specifiedUser.getBytes(2);
-          byte[] passwordSalt = specifiedUser.getBytes(3);
-          byte[] computedHash = MessageDigest.getInstance("SHA3-256").digest(
-              ByteBuffer.allocate(passwordHash.length + passwordSalt.length).put(passwordHash)
-                  .put(passwordSalt)
-                  .array());
-
-          if (!Arrays.equals(computedHash, correctHash)) {
-            this.server.logger.fine("Incorrect password");
-            ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-            sendBuffer.putShort((short) 5);
-            this.send(sendBuffer);
-            return;
-          }
+    ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+    sendBuffer.putShort((short) 0);
+    this.send(sendBuffer);
+    this.server.logger.fine("New account has been created. Login: '" + login + "'");
+  }
 
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 6);
-          this.send(sendBuffer);
-          this.accountId = specifiedUser.getLong(1);
-          this.server.logger.fine("Logged in user with id " + this.accountId);
-        } catch (SQLException | NoSuchAlgorithmException e) {
-          this.server.logException(e);
-          ByteBuffer sendBuffer = ByteBuffer.allocate(2);
-          sendBuffer.putShort((short) 1);
-          this.send(sendBuffer);
-        }
+  /**
+   * Logs in to existing account (operation code 1).
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handleLogin(ByteBuffer buffer) {
+    int loginLength = buffer.get();
+    byte[] loginBytes = new byte[loginLength];
+
+    if (loginBytes.length > 64) {
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 3);
+      this.send(sendBuffer);
+      return;
+    }
+
+    buffer.get(loginBytes);
+    String login = new String(loginBytes, StandardCharsets.UTF_8);
+
+    if (login.length() > 16) {
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 3);
+      this.send(sendBuffer);
+      return;
+    }
+
+    try (ResultSet specifiedUser = this.server.db.query(
+        "SELECT id, passwordHash, passwordSalt FROM accounts WHERE login = ?",
+        login)) {
+      if (!specifiedUser.next()) {
+        ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+        sendBuffer.putShort((short) 5);
+        this.send(sendBuffer);
+        return;
       }
-      case 2 -> {
-        if (this.accountId == 0) {
-          this.server.logger.finer("Received unauthorized request: 2");
-          return;
-        }
 
-        ArrayList<Message> messages = new ArrayList<>(64);
-        ArrayList<User> users = new ArrayList<>(16);
-        ArrayList<Long> userIds = new ArrayList<>(16);
-
-        try (ResultSet sentMessages = this.server.db.query(
-            "SELECT * FROM privateMessages WHERE sender = ?", this.accountId)) {
-          while (sentMessages.next()) {
-            long messageId = sentMessages.getLong(1);
-            long senderId = sentMessages.getLong(2);
-            long receiverId = sentMessages.getLong(3);
-
-            if (!userIds.contains(receiverId)) {
-              String name = "<unnamed>";
-
-              try (ResultSet userName = this.server.db.query(
-                  "SELECT login FROM accounts WHERE id = ?", receiverId)) {
-                if (userName.next()) {
-                  name = userName.getString(1);
-                }
-              }
-
-              users.add(new User(receiverId, name));
-              userIds.add(receiverId);
-            }
+      byte[] passwordHash = new byte[32];
 
-            InputStream textStream = sentMessages.getBinaryStream(4);
-            int available = textStream.available();
-            String text;
-
-            if (available > 0) {
-              //noinspection ObjectAllocationInLoop
-              byte[] textBytes = new byte[textStream.available()];
-              int attempt = 0;
-              int totalReadBytes = 0;
-
-              while (attempt < 16) {
-                totalReadBytes += textStream.read(textBytes, totalReadBytes,
-                    textBytes.length - totalReadBytes);
-                attempt++;
-
-                if (totalReadBytes >= textBytes.length) {
-                  break;
-                }
-              }
-
-              if (totalReadBytes != textBytes.length) {
-                throw new IllegalArgumentException("read bytes != textBytes.length");
-              }
-
-              //noinspection ObjectAllocationInLoop
-              text = new String(textBytes, StandardCharsets.UTF_8);
-            } else {
-              text = "";
-            }
+      buffer.get(passwordHash);
+      byte[] correctHash = specifiedUser.getBytes(2);
+      byte[] passwordSalt = specifiedUser.getBytes(3);
+      byte[] computedHash = MessageDigest.getInstance("SHA3-256").digest(
+          ByteBuffer.allocate(passwordHash.length + passwordSalt.length).put(passwordHash)
+              .put(passwordSalt)
+              .array());
 
-            //noinspection ObjectAllocationInLoop
-            messages.add(new Message(messageId, receiverId, true, text));
-          }
-        } catch (SQLException | IOException e) {
-          this.server.logException(e);
-        }
+      if (!Arrays.equals(computedHash, correctHash)) {
+        this.server.logger.fine("Incorrect password");
+        ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+        sendBuffer.putShort((short) 5);
+        this.send(sendBuffer);
+        return;
+      }
 
-        try (ResultSet receivedMessages = this.server.db.query(
-            "SELECT * FROM privateMessages WHERE receiver = ?", this.accountId)) {
-          while (receivedMessages.next()) {
-            long messageId = receivedMessages.getLong(1);
-            long senderId = receivedMessages.getLong(2);
+      this.setAccountId(specifiedUser.getLong(1));
+      // Token is sent first, so client has it, when it opens next screen
+      this.sendSessionToken();
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 6);
+      this.send(sendBuffer);
+      this.server.logger.fine("Logged in user with id " + this.accountId);
+    } catch (SQLException | NoSuchAlgorithmException e) {
+      this.server.logException(e);
+      ByteBuffer sendBuffer = ByteBuffer.allocate(2);
+      sendBuffer.putShort((short) 1);
+      this.send(sendBuffer);
+    }
+  }
 
-            if (!userIds.contains(senderId)) {
-              String name = "<unnamed>";
+  /**
+   * Sends contacts and newest messages of account (operation code 2). Messages are sent from
+   * newest to oldest in frames, bounded by {@link Server#HISTORY_FRAME_SIZE}, see
+   * {@link HistoryWriter}.
+   *
+   * @param buffer Optional maximum number of messages ({@code int}, {@code 0} means all messages)
+   *               without operation code.
+   */
+  public void handleHistory(ByteBuffer buffer) {
+    if (this.accountId == 0) {
+      this.server.logger.finer("Received unauthorized request: 2");
+      return;
+    }
 
-              try (ResultSet userName = this.server.db.query(
-                  "SELECT login FROM accounts WHERE id = ?", senderId)) {
-                if (userName.next()) {
-                  name = userName.getString(1);
-                }
-              }
+    int limit = buffer.remaining() >= 4 ? buffer.getInt() : 0;
+    ArrayList<User> users;
 
-              users.add(new User(senderId, name));
-              userIds.add(senderId);
-            }
+    try {
+      users = this.findContacts();
+    } catch (SQLException e) {
+      this.server.logException(e);
+      return;
+    }
 
-            long receiverId = receivedMessages.getLong(3);
-            InputStream textStream = receivedMessages.getBinaryStream(4);
-            //noinspection ObjectAllocationInLoop
-            byte[] textBytes = new byte[textStream.available()];
+    HistoryWriter writer = new HistoryWriter(this, (short) 7, users,
+        this.server.historyFrameSize);
+    String query =
+        "SELECT * FROM privateMessages WHERE sender = ? OR receiver = ? ORDER BY id DESC";
+
+    try (ResultSet messages = limit > 0
+        ? this.server.db.query(query + " LIMIT ?", this.accountId, this.accountId, limit)
+        : this.server.db.query(query, this.accountId, this.accountId)) {
+      while (messages.next()) {
+        //noinspection ObjectAllocationInLoop
+        writer.add(this.readMessage(messages));
+      }
+    } catch (SQLException | IOException e) {
+      this.server.logException(e);
+    }
 
-            if (textStream.read(textBytes) != textBytes.length) {
-              throw new IllegalArgumentException("read bytes != textBytes.length");
-            }
+    writer.finish();
+  }
 
-            //noinspection ObjectAllocationInLoop
-            String text = new String(textBytes, StandardCharsets.UTF_8);
-            //noinspection ObjectAllocationInLoop
-            messages.add(new Message(messageId, senderId, false, text));
-            this.server.logger.fine(
-                "%d, %d, %d, %s".formatted(messageId, senderId, receiverId, text));
-          }
-        } catch (SQLException | IOException e) {
-          this.server.logException(e);
-        }
+  /**
+   * Finds all accounts, that sent messages to this account, or received messages from it.
+   *
+   * @return Found accounts.
+   */
+  protected ArrayList<User> findContacts() throws SQLException {
+    ArrayList<User> users = new ArrayList<>(16);
+
+    try (ResultSet contacts = this.server.db.query(
+        "SELECT id, login FROM accounts WHERE id IN (SELECT receiver FROM privateMessages WHERE "
+            + "sender = ? UNION SELECT sender FROM privateMessages WHERE receiver = ?)",
+        this.accountId, this.accountId)) {
+      while (contacts.next()) {
+        //noinspection ObjectAllocationInLoop
+        users.add(new User(contacts.getLong(1), contacts.getString(2)));
+      }
+    }
 
-        int usersSize = 0;
+    return users;
+  }
 
-        for (User user : users) {
-          usersSize += user.byteSize();
-        }
+  /**
+   * Reads message from current row of {@code privateMessages} table.
+   *
+   * @param resultSet Result of query, that selects all columns.
+   * @return Message, as seen by this account.
+   */
+  protected Message readMessage(ResultSet resultSet) throws SQLException, IOException {
+    long senderId = resultSet.getLong(2);
+    boolean sentByMe = senderId == this.accountId;
+    return new Message(resultSet.getLong(1), sentByMe ? resultSet.getLong(3) : senderId,
+        sentByMe, Client.readText(resultSet, 4));
+  }
 
-        int messagesSize = 0;
+  /**
+   * Sends messages, that are newer than message, that client already has, and users, that sent
+   * or received them (operation code 8). Client, that keeps history locally, uses it instead of
+   * {@link Client#handleHistory(ByteBuffer)} after reconnecting.
+   *
+   * @param buffer Identifier of last known message without operation code.
+   */
+  public void handleHistorySince(ByteBuffer buffer) {
+    if (this.accountId == 0) {
+      this.server.logger.finer("Received unauthorized request: 8");
+      return;
+    }
 
-        for (Message message : messages) {
-          messagesSize += message.byteSize();
+    long lastMessageId = buffer.getLong();
+    ArrayList<Message> messages = new ArrayList<>(16);
+    ArrayList<User> users = new ArrayList<>(4);
+    ArrayList<Long> userIds = new ArrayList<>(4);
+
+    try (ResultSet newMessages = this.server.db.query(
+        "SELECT * FROM privateMessages WHERE id > ? AND (sender = ? OR receiver = ?) ORDER BY id",
+        lastMessageId, this.accountId, this.accountId)) {
+      while (newMessages.next()) {
+        Message message = this.readMessage(newMessages);
+
+        if (!userIds.contains(message.contactId)) {
+          //noinspection ObjectAllocationInLoop
+          users.add(new User(message.contactId, this.findUserName(message.contactId)));
+          userIds.add(message.contactId);
         }
 
-        ByteBuffer sendBuffer = ByteBuffer.allocate(2 + 4 + usersSize + 4 + messagesSize);
-        sendBuffer.putShort((short) 7);
-        sendBuffer.putInt(users.size());
+        messages.add(message);
+      }
+    } catch (SQLException | IOException e) {
+      this.server.logException(e);
+      return;
+    }
 
-        for (User user : users) {
-          sendBuffer.put(user.toBytes());
-        }
+    HistoryWriter writer = new HistoryWriter(this, HistoryWriter.NEXT_FRAME_CODE, users,
+        this.server.historyFrameSize);
 
-        sendBuffer.putInt(messages.size());
+    for (Message message : messages) {
+      writer.add(message);
+    }
 
-        for (Message message : messages) {
-          sendBuffer.put(message.toBytes());
-        }
+    writer.finish();
+  }
 
-        this.send(sendBuffer);
+  /**
+   * Sends page of conversation with one contact (operation code 9): up to {@code limit} newest
+   * messages, that are older than {@code beforeId}. Reply is
+   * {@code [17][long contactId][byte hasMore][int messages][messages]}, messages are sorted from
+   * newest to oldest.
+   *
+   * @param buffer {@code [long contactId][long beforeId][short limit]} without operation code,
+   *               {@code beforeId} is {@code 0} to get newest messages.
+   */
+  public void handleHistoryPage(ByteBuffer buffer) {
+    if (this.accountId == 0) {
+      this.server.logger.finer("Received unauthorized request: 9");
+      return;
+    }
+
+    long contactId = buffer.getLong();
+    long beforeId = buffer.getLong();
+    int limit = buffer.getShort();
+
+    if (limit <= 0 || limit > Server.HISTORY_PAGE_SIZE) {
+      limit = Server.HISTORY_PAGE_SIZE;
+    }
+
+    ArrayList<Message> messages = new ArrayList<>(limit + 1);
+
+    // One more message is queried to know, are there older messages
+    try (ResultSet page = this.server.db.query(
+        "SELECT * FROM privateMessages WHERE ((sender = ? AND receiver = ?) OR (sender = ? AND "
+            + "receiver = ?)) AND id < ? ORDER BY id DESC LIMIT ?", this.accountId, contactId,
+        contactId, this.accountId, beforeId == 0 ? Long.MAX_VALUE : beforeId, limit + 1)) {
+      while (page.next()) {
+        messages.add(this.readMessage(page));
       }
-      case 3 -> {
-        if (this.accountId == 0) {
-          this.server.logger.finer("Received unauthorized request: 2");
-          return;
-        }
+    } catch (SQLException | IOException e) {
+      this.server.logException(e);
+      return;
+    }
 
-        long contactId = buffer.getLong();
-        short messageLength = buffer.getShort();
-        byte[] messageBytes = new byte[messageLength];
-        buffer.get(messageBytes);
-        String message = new String(messageBytes, StandardCharsets.UTF_8);
+    boolean hasMore = messages.size() > limit;
 
-        if (this.server.db.update(
-            "INSERT INTO privateMessages (sender, receiver, text) VALUES (?, ?, ?)", this.accountId,
-            contactId, message) < 1) {
-          this.server.logger.warning("Message not delivered");
-        }
+    if (hasMore) {
+      messages.remove(limit);
+    }
 
-        for (Client client : this.server.clients) {
-          if (client.accountId == contactId) {
-            try (ResultSet messageSet = this.server.db.query(
-                "SELECT id FROM privateMessages WHERE sender = ? AND receiver = ? AND text = "
-                    + "? ORDER BY id DESC LIMIT 1",
-                this.accountId, contactId, message)) {
-              if (!messageSet.next()) {
-                break;
-              }
-
-              long messageId = messageSet.getLong(1);
-              Message sentMessage = new Message(messageId, this.accountId, false, message);
-              client.send(ByteBuffer.allocate(2 + sentMessage.byteSize()).putShort((short) 10)
-                  .put(sentMessage.toBytes()));
-            } catch (SQLException e) {
-              break;
-            }
+    boolean compact = this.compactEncoding;
+    int messagesSize = 0;
+    long previousId = 0;
 
-            break;
-          }
-        }
+    for (Message message : messages) {
+      messagesSize += compact ? message.compactSize(previousId) : message.byteSize();
+      previousId = message.id;
+    }
+
+    ByteBuffer sendBuffer = ByteBuffer.allocate(2 + 8 + 1 + 4 + messagesSize);
+    sendBuffer.putShort((short) 17);
+    sendBuffer.putLong(contactId);
+    sendBuffer.put((byte) (hasMore ? 1 : 0));
+    sendBuffer.putInt(messages.size());
+    previousId = 0;
+
+    for (Message message : messages) {
+      if (compact) {
+        message.writeCompactTo(sendBuffer, previousId);
+      } else {
+        message.writeTo(sendBuffer);
       }
-      case 4 -> {
-        if (this.accountId == 0) {
-          this.server.logger.finer("Received unauthorized request: 2");
-          return;
-        }
 
-        byte loginLength = buffer.get();
-        byte[] loginBytes = new byte[loginLength];
-        buffer.get(loginBytes);
-        String login = new String(loginBytes, StandardCharsets.UTF_8);
-
-        try (ResultSet result = this.server.db.query("SELECT id FROM accounts WHERE login = ?",
-            login)) {
-          if (result.next()) {
-            this.send(ByteBuffer.allocate(2 + 8).putShort((short) 8).putLong(result.getLong(1)));
-          } else {
-            this.send(ByteBuffer.allocate(2).putShort((short) 9));
-          }
-        } catch (SQLException e) {
-          this.server.logException(e);
-        }
+      previousId = message.id;
+    }
+
+    this.send(sendBuffer);
+  }
+
+  /**
+   * Finds login of account.
+   *
+   * @param userId Identifier of account.
+   * @return Login, or {@code "<unnamed>"} if account isn't found.
+   */
+  protected String findUserName(long userId) throws SQLException {
+    try (ResultSet userName = this.server.db.query(
+        "SELECT login FROM accounts WHERE id = ?", userId)) {
+      if (userName.next()) {
+        return userName.getString(1);
+      }
+    }
+
+    return "<unnamed>";
+  }
+
+  /**
+   * Reads UTF-8 text from column of current row.
+   *
+   * @param resultSet Result of query.
+   * @param column    Index of column, starting from 1.
+   * @return Read text, empty if column is {@code NULL}.
+   */
+  protected static String readText(ResultSet resultSet, int column)
+      throws SQLException, IOException {
+    try (InputStream textStream = resultSet.getBinaryStream(column)) {
+      if (textStream == null) {
+        return "";
+      }
+
+      return new String(textStream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Stores message and delivers it to connected sessions of receiver (operation
+   * code 3). Sender receives {@code [18][long messageId]}, identifier is {@code 0} if message
+   * isn't stored.
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handleSendMessage(ByteBuffer buffer) {
+    if (this.accountId == 0) {
+      this.server.logger.finer("Received unauthorized request: 3");
+      return;
+    }
+
+    long contactId = buffer.getLong();
+    short messageLength = buffer.getShort();
+    byte[] messageBytes = new byte[messageLength];
+    buffer.get(messageBytes);
+    String message = new String(messageBytes, StandardCharsets.UTF_8);
+
+    long messageId = this.server.db.insert(
+        "INSERT INTO privateMessages (sender, receiver, text) VALUES (?, ?, ?)", this.accountId,
+        contactId, message);
+
+    // Acknowledgement is sent even if message isn't stored, so client knows about it
+    this.send(ByteBuffer.allocate(2 + 8).putShort((short) 18).putLong(Math.max(0, messageId)));
+
+    if (messageId < 1) {
+      this.server.logger.warning("Message not delivered");
+      return;
+    }
+
+    Set<Client> recipients = this.server.sessions.get(contactId);
+
+    if (recipients.isEmpty()) {
+      return;
+    }
+
+    Message sentMessage = new Message(messageId, this.accountId, false, message);
+    ByteBuffer sendBuffer = ByteBuffer.allocate(2 + sentMessage.byteSize()).putShort((short) 10);
+    sentMessage.writeTo(sendBuffer);
+    ByteBuffer compactBuffer =
+        ByteBuffer.allocate(2 + sentMessage.compactSize(0)).putShort((short) 10);
+    sentMessage.writeCompactTo(compactBuffer, 0);
+
+    // Delivery can be dropped, message is stored and will be sent with history
+    this.deliver(recipients, sendBuffer, compactBuffer, true);
+  }
+
+  /**
+   * Finds account by it's login (operation code 4).
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handleFindContact(ByteBuffer buffer) {
+    if (this.accountId == 0) {
+      this.server.logger.finer("Received unauthorized request: 4");
+      return;
+    }
+
+    byte loginLength = buffer.get();
+    byte[] loginBytes = new byte[loginLength];
+    buffer.get(loginBytes);
+    String login = new String(loginBytes, StandardCharsets.UTF_8);
+
+    try (ResultSet result = this.server.db.query("SELECT id FROM accounts WHERE login = ?",
+        login)) {
+      if (result.next()) {
+        this.send(ByteBuffer.allocate(2 + 8).putShort((short) 8).putLong(result.getLong(1)));
+      } else {
+        this.send(ByteBuffer.allocate(2).putShort((short) 9));
+      }
+    } catch (SQLException e) {
+      this.server.logException(e);
+    }
+  }
+
+  /**
+   * Echoes ping payload back (operation code 5).
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handlePing(ByteBuffer buffer) {
+    ByteBuffer sendBuffer = ByteBuffer.allocate(2 + buffer.remaining());
+    sendBuffer.putShort((short) 11);
+    sendBuffer.put(buffer);
+    this.send(sendBuffer);
+  }
+
+  /**
+   * Chooses cipher suite for this connection (operation code 6). Client sends suites, it
+   * supports, in order of preference, and waits for reply before sending anything else. Reply is
+   * encrypted with current suite, all next packets in both directions use chosen suite.
+   * Last byte has features, that client supports, reply has features, that are enabled:
+   * {@link Compression#FEATURE} (if {@link Server#COMPRESSION} is set), {@link Batch#FEATURE} and
+   * {@link CompactEncoding#FEATURE} (if {@link Server#COMPACT_ENCODING} is set).
+   *
+   * @param buffer {@code [byte count][suites][byte features]} without operation code.
+   */
+  public void handleHello(ByteBuffer buffer) {
+    int suitesCount = buffer.get() & 0xFF;
+    CipherSuite chosenSuite = CipherSuite.AES_GCM;
+
+    for (int i = 0; i < suitesCount; i++) {
+      CipherSuite suite = CipherSuite.fromId(buffer.get());
+
+      if (suite != null && Arrays.asList(this.server.cipherSuites).contains(suite)) {
+        chosenSuite = suite;
+        break;
+      }
+    }
+
+    // Older clients don't send features
+    byte features = buffer.hasRemaining() ? buffer.get() : 0;
+    boolean useCompression = Server.COMPRESSION && (features & Compression.FEATURE) != 0;
+    boolean useCompactEncoding =
+        Server.COMPACT_ENCODING && (features & CompactEncoding.FEATURE) != 0;
+    this.send(ByteBuffer.allocate(2 + 1 + 1).putShort((short) 13).put(chosenSuite.id)
+        .put((byte) ((useCompression ? Compression.FEATURE : 0) | Batch.FEATURE
+            | (useCompactEncoding ? CompactEncoding.FEATURE : 0))));
+    this.cipherSuite = chosenSuite;
+    this.compression = useCompression;
+    this.batching = (features & Batch.FEATURE) != 0;
+    this.compactEncoding = useCompactEncoding;
+    this.server.logger.fine("Using cipher suite " + chosenSuite.configName
+        + (useCompression ? " with compression" : ""));
+  }
+
+  /**
+   * Handles every packet of batch (operation code 10) in order, see {@link Batch}.
+   *
+   * @param buffer Batch without operation code.
+   */
+  public void handleBatch(ByteBuffer buffer) {
+    ArrayList<byte[]> packets;
+
+    try {
+      packets = Batch.unpack(buffer);
+    } catch (IllegalArgumentException e) {
+      this.server.logger.finer("Invalid batch from client: " + e.getMessage());
+      return;
+    }
+
+    for (byte[] packet : packets) {
+      short code = RequestHeader.getCode((short) (((packet[0] & 0xFF) << 8) | (packet[1] & 0xFF)));
+
+      // Batch inside batch is ignored, so client can't make handling recursive
+      if (code != Batch.CLIENT_CODE) {
+        //noinspection ObjectAllocationInLoop
+        this.handle(ByteBuffer.wrap(packet));
       }
-      // FINER to prevent spamming from modified (or broken) client, slowing down the server
-      default -> this.server.logger.finer("Unexpected operation code from client: " + code);
+    }
+  }
+
+  /**
+   * Logs in to account with session token from previous connection (operation code 7), replying
+   * with new token, or with code 15, if token is invalid or expired.
+   *
+   * @param buffer Message without operation code.
+   */
+  public void handleResume(ByteBuffer buffer) {
+    long resumedAccountId = 0;
+
+    if (buffer.remaining() >= SessionTokens.TOKEN_SIZE) {
+      try {
+        resumedAccountId = this.server.sessionTokens.verify(buffer);
+      } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+        this.server.logException(e);
+      }
+    }
+
+    if (resumedAccountId == 0) {
+      this.send(ByteBuffer.allocate(2).putShort((short) 15));
+      return;
+    }
+
+    this.setAccountId(resumedAccountId);
+    this.sendSessionToken();
+    this.server.logger.fine("Resumed session of user with id " + resumedAccountId);
+  }
+
+  /**
+   * Sends new session token for current account (code 14), that client can use in
+   * {@link Client#handleResume(ByteBuffer)} after reconnect.
+   */
+  protected void sendSessionToken() {
+    try {
+      this.send(ByteBuffer.allocate(2 + SessionTokens.TOKEN_SIZE).putShort((short) 14)
+          .put(this.server.sessionTokens.issue(this.accountId)));
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      this.server.logException(e);
     }
   }
 
   /**
    * Loop, that receives message from client and calls {@link Client#handle(ByteBuffer)}.
+   * Used only with {@link SocketConnection}.
    */
   public void receiveHandleLoop() {
     while (true) {
-      if (!this.socket.isConnected()) {
+      if (!this.connection.isOpen()) {
         break;
       }
 
@@ -452,6 +751,8 @@ public class Client {
 
       this.handle(buffer);
     }
+
+    this.disconnect();
   }
 
   /**
@@ -460,37 +761,251 @@ public class Client {
    * @throws EOFException Client disconnected (buffer closed).
    */
   public void receiveOnce() throws EOFException {
-    try {
-      int packetLength = this.inputStream.readInt();
-      byte[] packet = new byte[packetLength];
-      int readBytes = this.inputStream.read(packet, 0, packetLength);
-
-      if (packetLength != readBytes) {
-        this.server.logger.warning(
-            String.format(Locale.ENGLISH, "Read not all bytes (%d from %d).", readBytes,
-                packetLength));
-        return;
-      }
+    SocketConnection socketConnection = (SocketConnection) this.connection;
 
-      this.packets.add(packet);
+    try {
+      this.packets.add(socketConnection.frameDecoder.read(socketConnection.inputStream));
     } catch (EOFException e) {
       throw e;
+    } catch (SocketException e) {
+      // Connection reset or closed, client will never send anything again
+      throw new EOFException(e.getMessage());
     } catch (IOException e) {
-      this.server.logException(e);
+      // After failed read position in stream is unknown, so next packets can't be read
+      this.server.logException(e, Level.WARNING);
+      throw new EOFException(e.getMessage());
+    }
+  }
+
+  /**
+   * Handles packet, that was received by non-blocking {@link Connection}.
+   *
+   * @param packet Encrypted packet from {@link FrameDecoder}.
+   */
+  public void onPacket(ByteBuffer packet) {
+    this.packets.add(packet);
+    ByteBuffer buffer = this.receive();
+
+    if (buffer != null) {
+      this.handle(buffer);
+    }
+  }
+
+  /**
+   * Returns executor, that runs tasks of this client with same key one by one.
+   *
+   * @param key      Key of tasks, that must not run at the same time.
+   * @param executor Executor, that runs tasks.
+   * @return Executor, that runs tasks in order they were added.
+   */
+  public Executor lane(Object key, Executor executor) {
+    return this.lanes.computeIfAbsent(key, k -> new SerialExecutor(executor));
+  }
+
+  /**
+   * Sends message to other clients in {@link Server#fanOutExecutor}, so slow recipients don't
+   * delay handler of this client. Messages from this client are delivered in order.
+   *
+   * @param recipients  Clients, that will receive message.
+   * @param buffer      Data to be sent.
+   * @param lowPriority {@code true} if message can be dropped, when recipient is too slow.
+   */
+  public void deliver(Collection<Client> recipients, ByteBuffer buffer, boolean lowPriority) {
+    this.deliver(recipients, buffer, buffer, lowPriority);
+  }
+
+  /**
+   * Sends message to other clients in {@link Server#fanOutExecutor}, choosing encoding of every
+   * recipient.
+   *
+   * @param recipients    Clients, that receive message.
+   * @param buffer        Data to be sent.
+   * @param compactBuffer Data to be sent to clients, that use {@link CompactEncoding}.
+   * @param lowPriority   {@code true} if message can be dropped, when recipient is too slow.
+   */
+  public void deliver(Collection<Client> recipients, ByteBuffer buffer, ByteBuffer compactBuffer,
+      boolean lowPriority) {
+    this.server.activeHandlers.incrementAndGet();
+
+    try {
+      this.lane(Client.FAN_OUT_LANE, this.server.fanOutExecutor).execute(() -> {
+        try {
+          for (Client client : recipients) {
+            client.sendBatched(
+                client.compactEncoding ? compactBuffer.array() : buffer.array(), lowPriority);
+          }
+        } finally {
+          this.server.activeHandlers.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      this.server.activeHandlers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Sends message to client together with other messages, that are sent to it during
+   * {@link Server#batchWindow} milliseconds, in one {@link Batch}. If client doesn't support
+   * batches, or window is {@code 0}, message is sent right away.
+   *
+   * @param bytes       Data to be sent.
+   * @param lowPriority {@code true} if message can be dropped, when client is too slow.
+   */
+  public void sendBatched(byte[] bytes, boolean lowPriority) {
+    int window = this.server.batchWindow;
+
+    if (!this.batching || window <= 0) {
+      this.send(bytes, lowPriority);
+      return;
+    }
+
+    synchronized (this.batchPackets) {
+      this.batchPackets.add(bytes);
+      this.batchLowPriority &= lowPriority;
+
+      // First packet schedules sending, next packets wait for it
+      if (this.batchPackets.size() > 1) {
+        return;
+      }
+    }
+
+    this.server.activeHandlers.incrementAndGet();
+
+    try {
+      this.server.scheduler.schedule(() -> {
+        try {
+          this.lane(Client.FAN_OUT_LANE, this.server.fanOutExecutor).execute(() -> {
+            try {
+              this.flushBatch();
+            } finally {
+              this.server.activeHandlers.decrementAndGet();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          this.server.activeHandlers.decrementAndGet();
+          this.flushBatch();
+        }
+      }, window, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      this.server.activeHandlers.decrementAndGet();
+      this.flushBatch();
+    }
+  }
+
+  /**
+   * Sends packets, collected by {@link Client#sendBatched(byte[], boolean)}.
+   */
+  protected void flushBatch() {
+    ArrayList<byte[]> packets;
+    boolean lowPriority;
+
+    synchronized (this.batchPackets) {
+      if (this.batchPackets.isEmpty()) {
+        return;
+      }
+
+      packets = new ArrayList<>(this.batchPackets);
+      lowPriority = this.batchLowPriority;
+      this.batchPackets.clear();
+      this.batchLowPriority = true;
+    }
+
+    if (packets.size() == 1) {
+      this.send(packets.get(0), lowPriority);
+      return;
+    }
+
+    ArrayList<byte[]> batch = new ArrayList<>(packets.size());
+    int batchSize = Batch.HEADER_SIZE;
+
+    for (byte[] packet : packets) {
+      batch.add(packet);
+      batchSize += Batch.ENTRY_HEADER_SIZE + packet.length;
+
+      if (batchSize >= Batch.MAX_SIZE || batch.size() >= Batch.MAX_PACKETS) {
+        this.send(Batch.pack(Batch.SERVER_CODE, batch), lowPriority);
+        batch.clear();
+        batchSize = Batch.HEADER_SIZE;
+      }
+    }
+
+    if (batch.size() == 1) {
+      this.send(batch.get(0), lowPriority);
+    } else if (!batch.isEmpty()) {
+      this.send(Batch.pack(Batch.SERVER_CODE, batch), lowPriority);
     }
   }
 
   /**
    * Sends message to client.
    *
+   * @param bytes       Data to be sent.
+   * @param lowPriority {@code true} if message can be dropped, when client is too slow, because
+   *                    client can get it's data later.
+   */
+  public void send(byte[] bytes, boolean lowPriority) {
+    this.send(bytes, lowPriority, false);
+  }
+
+  /**
+   * Sends message to client, waiting for room in it's queue, while client reads it, see
+   * {@link OutboundQueue#add(byte[], boolean, boolean)}. Used for large replies, that would
+   * otherwise disconnect client, that asked for them.
+   *
    * @param bytes Data to be sent.
    */
-  public void send(byte[] bytes) {
+  public void sendWaiting(byte[] bytes) {
+    this.send(bytes, false, true);
+  }
+
+  /**
+   * Sends message from buffer, like {@link Client#sendWaiting(byte[])}, but encrypts it straight
+   * from buffer without copying. Request identifier isn't added, message must already have it,
+   * see {@link Client#getRequestId()}.
+   *
+   * @param buffer Message between position and limit, buffer can be reused after return.
+   */
+  public void sendWaiting(ByteBuffer buffer) {
+    this.write(buffer, false, true);
+  }
+
+  /**
+   * Returns identifier of request of this client, that is handled by current thread, so
+   * responses can be written with {@link RequestHeader} without copying.
+   *
+   * @return Identifier of request, or {@code 0} if current thread doesn't handle request.
+   */
+  public int getRequestId() {
+    Request request = Client.currentRequest.get();
+    return request != null && request.client == this ? request.id : 0;
+  }
+
+  protected void send(byte[] bytes, boolean lowPriority, boolean waitForRoom) {
+    int requestId = this.getRequestId();
+
+    if (requestId != 0) {
+      // Response to request of this client
+      bytes = RequestHeader.withRequestId(bytes, requestId);
+    }
+
+    this.write(ByteBuffer.wrap(bytes), lowPriority, waitForRoom);
+  }
+
+  protected void write(ByteBuffer buffer, boolean lowPriority, boolean waitForRoom) {
     try {
-      byte[] encryptedBytes = Aes.encrypt(bytes);
-      this.outputStream.writeInt(encryptedBytes.length);
-      this.outputStream.write(encryptedBytes);
-      this.outputStream.flush();
+      ByteBuffer packet =
+          this.compression ? ByteBuffer.wrap(Compression.compress(buffer)) : buffer.duplicate();
+      byte[] encryptedBytes = new byte[Aes.encryptedSize(packet.remaining())];
+      this.cipherSuite.encrypt(packet, ByteBuffer.wrap(encryptedBytes));
+      this.connection.write(encryptedBytes, lowPriority, waitForRoom);
+    } catch (ShortBufferException e) {
+      // Size of array is always enough
+      throw new IllegalStateException(e);
+    } catch (OutboundOverflowException e) {
+      this.server.logger.warning(
+          "Disconnecting slow client: " + e.getMessage() + " (" + this.server.outboundPolicy
+              + ")");
+      this.disconnect();
     } catch (IOException | InvalidAlgorithmParameterException | NoSuchPaddingException
              | IllegalBlockSizeException | NoSuchAlgorithmException | BadPaddingException
              | InvalidKeyException e) {
@@ -499,12 +1014,31 @@ public class Client {
   }
 
   /**
-   * Sends message to client. See also {@link Client#send(byte[])}.
+   * Sends message to client. See also {@link Client#send(byte[], boolean)}.
+   *
+   * @param bytes Data to be sent.
+   */
+  public void send(byte[] bytes) {
+    this.send(bytes, false);
+  }
+
+  /**
+   * Sends message to client. See also {@link Client#send(byte[], boolean)}.
+   *
+   * @param buffer      Data to be sent.
+   * @param lowPriority {@code true} if message can be dropped, when client is too slow.
+   */
+  public void send(ByteBuffer buffer, boolean lowPriority) {
+    this.send(buffer.array(), lowPriority);
+  }
+
+  /**
+   * Sends message to client. See also {@link Client#send(byte[], boolean)}.
    *
    * @param buffer Data to be sent.
    */
   public void send(ByteBuffer buffer) {
-    this.send(buffer.array());
+    this.send(buffer.array(), false);
   }
 
   /**
@@ -513,13 +1047,21 @@ public class Client {
    * @return Array of received bytes.
    */
   public byte[] receiveBytes() {
-    byte[] packet = packets.poll();
+    ByteBuffer packet = this.packets.poll();
+
+    if (packet == null) {
+      return null;
+    }
 
     try {
-      return Aes.decrypt(packet);
+      byte[] bytes = this.cipherSuite.decrypt(packet);
+      return this.compression ? Compression.decompress(bytes, this.server.maxFrameSize) : bytes;
     } catch (InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException
-             | NoSuchAlgorithmException | IllegalBlockSizeException | NoSuchPaddingException e) {
+             | NoSuchAlgorithmException | IllegalBlockSizeException | NoSuchPaddingException
+             | DataFormatException e) {
       this.server.logException(e);
+    } finally {
+      this.server.bufferPool.release(packet);
     }
 
     return null;
@@ -540,14 +1082,58 @@ public class Client {
     return ByteBuffer.wrap(bytes);
   }
 
+  /**
+   * Returns time, when last packet was received from client.
+   *
+   * @return Time in milliseconds, see {@link System#currentTimeMillis()}.
+   */
+  public long getLastReceiveTime() {
+    return this.lastReceiveTime;
+  }
+
+  /**
+   * Sets account, that client is logged in to, and updates {@link Server#sessions}.
+   *
+   * @param accountId Identifier of account.
+   */
+  public void setAccountId(long accountId) {
+    long previousAccountId = this.accountId;
+    this.accountId = accountId;
+
+    if (previousAccountId != 0 && previousAccountId != accountId) {
+      this.server.sessions.unbind(this, previousAccountId);
+    }
+
+    this.server.sessions.bind(this, accountId);
+  }
+
   /**
    * Closes connection with client, letting client know about disconnect.
    */
   public void disconnect() {
+    if (this.server.sessions.remove(this)) {
+      this.server.admission.release(this.connection.getAddress());
+    }
+
     try {
-      this.socket.close();
+      this.connection.close();
     } catch (IOException e) {
       this.server.logException(e);
     }
   }
+
+  /**
+   * Request with identifier, that is handled by some thread.
+   *
+   * @since 1.0
+   */
+  protected static class Request {
+    public final Client client;
+    public final int id;
+
+    protected Request(Client client, int id) {
+      this.client = client;
+      this.id = id;
+    }
+  }
 }
@@ -0,0 +1,66 @@
+package com.werryxgames.messaje;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Transport-level connection of {@link Client}. Implementations only move length-prefixed
+ * encrypted packets, everything else is done by {@link Client}.
+ *
+ * @since 1.0
+ */
+public interface Connection {
+  /**
+   * Returns address of remote side of connection.
+   *
+   * @return Address of connected client.
+   */
+  InetAddress getAddress();
+
+  /**
+   * Checks is connection still open.
+   *
+   * @return {@code true} if connection is open, {@code false} otherwise.
+   */
+  boolean isOpen();
+
+  /**
+   * Queues one encrypted packet, that will be written prefixed with it's length. Never waits for
+   * socket of client, so it can be called from thread of any other client.
+   *
+   * @param packet      Encrypted packet.
+   * @param lowPriority {@code true} if packet can be dropped, when client is too slow.
+   * @return {@code true} if packet is queued, {@code false} if it was dropped.
+   * @throws IOException Connection is already closed, or client must be disconnected, because it
+   *                     is too slow (see {@link OutboundOverflowException}).
+   */
+  default boolean write(byte[] packet, boolean lowPriority) throws IOException {
+    return this.write(packet, lowPriority, false);
+  }
+
+  /**
+   * Queues one encrypted packet, like {@link Connection#write(byte[], boolean)}, but can wait for
+   * room in queue, see {@link OutboundQueue#add(byte[], boolean, boolean)}.
+   *
+   * @param packet      Encrypted packet.
+   * @param lowPriority {@code true} if packet can be dropped, when client is too slow.
+   * @param waitForRoom {@code true} if current thread waits, while client reads queued packets.
+   * @return {@code true} if packet is queued, {@code false} if it was dropped.
+   * @throws IOException Connection is already closed, or client must be disconnected.
+   */
+  boolean write(byte[] packet, boolean lowPriority, boolean waitForRoom) throws IOException;
+
+  /**
+   * Checks are there queued packets, that are not fully written yet.
+   *
+   * @return {@code true} if some packets are not written yet.
+   */
+  boolean hasQueuedPackets();
+
+  /**
+   * Closes connection.
+   *
+   * @throws IOException Connection can't be closed.
+   */
+  void close() throws IOException;
+}
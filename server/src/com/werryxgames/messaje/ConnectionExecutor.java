@@ -0,0 +1,16 @@
+package com.werryxgames.messaje;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor, that runs long-living tasks of connected clients, like
+ * {@link Client#receiveHandleLoop()}.
+ *
+ * @since 1.0
+ */
+public interface ConnectionExecutor extends Executor {
+  /**
+   * Stops accepting new tasks. Already running tasks are not interrupted.
+   */
+  void shutdown();
+}
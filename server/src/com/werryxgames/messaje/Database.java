@@ -5,6 +5,10 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 /*
   To make database works, install mariadb-server and mariadb-client.
@@ -37,17 +41,140 @@ import java.sql.SQLException;
  */
 
 /**
- * Database client, that connects to MariaDB.
+ * Database client, that connects to MariaDB. Every thread gets it's own connection, when it uses
+ * database first time, so slow query in one thread doesn't block queries in other threads.
  *
  * @since 1.0
  */
-public class Database {
+public class Database implements ConfigListener {
   public Server server;
-  public Connection connection;
+  protected String url;
+  protected String user;
+  protected String password;
+  protected final ThreadLocal<Connection> threadConnection = new ThreadLocal<>();
+  // Incremented, when connection parameters change, see refreshConnection()
+  protected volatile int generation = 0;
+  protected final ThreadLocal<Integer> threadGeneration = new ThreadLocal<>();
+  // All opened connections, so they can be closed on shutdown
+  protected final Set<Connection> connections = ConcurrentHashMap.newKeySet();
 
+  /**
+   * Constructor for {@link Database}.
+   *
+   * @param server   Server, that uses database.
+   * @param url      Address and name of database, without {@code jdbc:mariadb://}.
+   * @param user     Name of database user.
+   * @param password Password of database user.
+   * @throws SQLException Thrown if connection can't be established.
+   */
   public Database(Server server, String url, String user, String password) throws SQLException {
     this.server = server;
-    this.connection = DriverManager.getConnection("jdbc:mariadb://" + url, user, password);
+    this.url = url;
+    this.user = user;
+    this.password = password;
+    // Connection of constructing thread checks, that database is available
+    this.getConnection();
+  }
+
+  /**
+   * Returns connection of current thread, opening it on first call, or if it was closed.
+   *
+   * @return Connection, that is used only by current thread.
+   * @throws SQLException Thrown if connection can't be established.
+   */
+  public Connection getConnection() throws SQLException {
+    Connection connection = this.threadConnection.get();
+
+    if (connection == null || connection.isClosed()) {
+      if (connection != null) {
+        this.connections.remove(connection);
+      }
+
+      int currentGeneration = this.generation;
+      connection = this.openConnection();
+      this.threadConnection.set(connection);
+      this.threadGeneration.set(currentGeneration);
+      this.connections.add(connection);
+    }
+
+    return connection;
+  }
+
+  protected synchronized Connection openConnection() throws SQLException {
+    return DriverManager.getConnection("jdbc:mariadb://" + this.url, this.user, this.password);
+  }
+
+  /**
+   * Closes connection of current thread, if it was opened before connection parameters changed.
+   * Must be called only between tasks, when thread has no open statements, so running queries
+   * are not broken. Next {@link Database#getConnection()} opens connection with new parameters.
+   */
+  public void refreshConnection() {
+    Integer connectionGeneration = this.threadGeneration.get();
+
+    if (connectionGeneration != null && connectionGeneration != this.generation) {
+      this.closeThreadConnection();
+    }
+  }
+
+  /**
+   * Closes connection of current thread. Must be called, before thread, that used database, stops.
+   */
+  public void closeThreadConnection() {
+    Connection connection = this.threadConnection.get();
+
+    if (connection == null) {
+      return;
+    }
+
+    this.threadConnection.remove();
+    this.threadGeneration.remove();
+    this.connections.remove(connection);
+
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      this.server.logException(e, Level.WARNING);
+    }
+  }
+
+  /**
+   * Changes URL, user or password of database, if new connection with them can be established.
+   * Old connections are not closed here, because other threads can be using them, every thread
+   * replaces it's connection in {@link Database#refreshConnection()} before next task.
+   *
+   * @param previous Previous configuration.
+   * @param current  New configuration.
+   */
+  @Override
+  public synchronized void onConfigChanged(ConfigSnapshot previous, ConfigSnapshot current) {
+    if (!current.differs(previous, "db.url", "db.user", "db.password")) {
+      return;
+    }
+
+    String newUrl = current.get("db.url", this.url);
+    String newUser = current.get("db.user", this.user);
+    String newPassword = current.get("db.password", this.password);
+
+    // New values are checked, so broken configuration doesn't break working server
+    try (Connection connection = DriverManager.getConnection("jdbc:mariadb://" + newUrl, newUser,
+        newPassword)) {
+      if (!connection.isValid(5)) {
+        this.server.logger.warning("New database connection parameters are not applied, because"
+            + " database doesn't respond");
+        return;
+      }
+
+      this.url = newUrl;
+      this.user = newUser;
+      this.password = newPassword;
+      this.generation++;
+    } catch (SQLException e) {
+      this.server.logException(e, Level.WARNING);
+      return;
+    }
+
+    this.server.logger.info("Changed database connection parameters");
   }
 
   /**
@@ -61,12 +188,33 @@ public class Database {
     PreparedStatement statement;
 
     try {
-      statement = this.connection.prepareStatement(defaultStatement);
+      statement = this.getConnection().prepareStatement(defaultStatement);
     } catch (SQLException e) {
       this.server.logException(e);
       return null;
     }
 
+    if (this.bind(statement, replacements) == null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        this.server.logException(e);
+      }
+
+      return null;
+    }
+
+    return statement;
+  }
+
+  /**
+   * Replaces question marks (?) in prepared statement with values.
+   *
+   * @param statement Prepared statement.
+   * @param replacements See {@link Database#prepare(String, Object...)}.
+   * @return Same statement, or {@code null} if values can't be set.
+   */
+  protected PreparedStatement bind(PreparedStatement statement, Object... replacements) {
     int replacementsLength = replacements.length;
 
     for (int i = 0; i < replacementsLength; i++) {
@@ -130,6 +278,32 @@ public class Database {
     return statement;
   }
 
+  /**
+   * Inserts row and returns it's identifier, generated by database.
+   *
+   * @param insert SQL code.
+   * @param replacements See {@link Database#prepare(String, Object...)}.
+   * @return Generated identifier, or {@code -1} if row isn't inserted.
+   */
+  public long insert(String insert, Object... replacements) {
+    try (PreparedStatement statement = this.getConnection().prepareStatement(insert,
+        Statement.RETURN_GENERATED_KEYS)) {
+      if (this.bind(statement, replacements) == null || statement.executeUpdate() < 1) {
+        return -1;
+      }
+
+      try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+        if (generatedKeys.next()) {
+          return generatedKeys.getLong(1);
+        }
+      }
+    } catch (SQLException e) {
+      this.server.logException(e);
+    }
+
+    return -1;
+  }
+
   /**
    * Updates database.
    *
@@ -144,8 +318,9 @@ public class Database {
       return -1;
     }
 
-    try {
-      return statement.executeUpdate();
+    // Connections live as long as their threads, so statements are closed right away
+    try (PreparedStatement updateStatement = statement) {
+      return updateStatement.executeUpdate();
     } catch (SQLException e) {
       this.server.logException(e);
     }
@@ -168,6 +343,8 @@ public class Database {
     }
 
     try {
+      // Statement is closed with result set, that caller closes
+      statement.closeOnCompletion();
       return statement.executeQuery();
     } catch (SQLException e) {
       this.server.logException(e);
@@ -177,13 +354,17 @@ public class Database {
   }
 
   /**
-   * Closes database. Must be called in the end of program.
+   * Closes connections of all threads. Must be called in the end of program.
    */
   public void close() {
-    try {
-      this.connection.close();
-    } catch (SQLException e) {
-      this.server.logException(e);
+    for (Connection connection : this.connections) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        this.server.logException(e);
+      }
     }
+
+    this.connections.clear();
   }
 }
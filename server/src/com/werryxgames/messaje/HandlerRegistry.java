@@ -0,0 +1,129 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps operation codes from client to their {@link OpcodeHandler} and {@link Executor}, that
+ * runs them. Messages from one client, that run in the same executor (for example, all operations
+ * with database), are handled one by one in order they were received, so later request sees
+ * changes of earlier one. Messages of different clients are handled at the same time.
+ *
+ * @since 1.0
+ */
+public class HandlerRegistry {
+  /**
+   * Executor, that runs handler in thread, that received message.
+   */
+  public static final Executor INLINE = Runnable::run;
+
+  public Server server;
+  protected ConcurrentHashMap<Short, Registration> registrations = new ConcurrentHashMap<>();
+
+  public HandlerRegistry(Server server) {
+    this.server = server;
+  }
+
+  /**
+   * Binds handler to operation code. Replaces previous handler of this code.
+   *
+   * @param code     Operation code.
+   * @param name     Name of operation, used in statistics.
+   * @param handler  Handler of operation.
+   * @param executor Executor, that runs handler, or {@link HandlerRegistry#INLINE}.
+   */
+  public void register(short code, String name, OpcodeHandler handler, Executor executor) {
+    this.registrations.put(code, new Registration(code, name, handler, executor));
+  }
+
+  /**
+   * Passes message to handler of it's operation code.
+   *
+   * @param client    Client, that sent message.
+   * @param code      Operation code.
+   * @param requestId Identifier of request, or {@code 0}, see {@link RequestHeader}.
+   * @param buffer    Message without operation code and request identifier.
+   * @return {@code false} if there is no handler for operation code.
+   */
+  public boolean dispatch(Client client, short code, int requestId, ByteBuffer buffer) {
+    Registration registration = this.registrations.get(code);
+
+    if (registration == null) {
+      return false;
+    }
+
+    // Counted before task is queued, so Server#shutdown() waits for queued tasks too
+    this.server.activeHandlers.incrementAndGet();
+    Runnable task = () -> {
+      long startTime = System.nanoTime();
+
+      try {
+        client.handleRequest(requestId, () -> registration.handler.handle(client, buffer));
+      } catch (RuntimeException e) {
+        this.server.logException(e);
+      } finally {
+        registration.calls.incrementAndGet();
+        registration.totalTime.addAndGet(System.nanoTime() - startTime);
+        this.server.activeHandlers.decrementAndGet();
+      }
+    };
+
+    try {
+      if (registration.executor == HandlerRegistry.INLINE) {
+        task.run();
+      } else {
+        // One lane per executor, not per operation, so send message can't overtake login
+        client.lane(registration.executor, registration.executor).execute(task);
+      }
+    } catch (RejectedExecutionException e) {
+      this.server.activeHandlers.decrementAndGet();
+      this.server.logger.fine("Handler of operation " + code + " rejected: " + e.getMessage());
+    }
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+
+    for (Registration registration : this.registrations.values()) {
+      long calls = registration.calls.get();
+
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+
+      builder.append(String.format(Locale.ENGLISH, "%d %s: %d calls, %.3f ms average",
+          registration.code, registration.name, calls,
+          calls == 0 ? 0.0 : registration.totalTime.get() / 1e6 / calls));
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Handler, bound to operation code, with it's statistics.
+   *
+   * @since 1.0
+   */
+  protected static class Registration {
+    public final short code;
+    public final String name;
+    public final OpcodeHandler handler;
+    public final Executor executor;
+    public final AtomicLong calls = new AtomicLong();
+    public final AtomicLong totalTime = new AtomicLong();
+
+    protected Registration(short code, String name, OpcodeHandler handler, Executor executor) {
+      this.code = code;
+      this.name = name;
+      this.handler = handler;
+      this.executor = executor;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Class, that sends history to client as sequence of frames with bounded size, so neither server
+ * nor client hold whole history in one buffer. Every frame has layout
+ * {@code [code][int users][users][int messages][messages]}. First frame has code, passed to
+ * constructor, and all users, next frames have code {@code 16}, no users and rest of messages.
+ * If client uses {@link CompactEncoding}, identifiers of messages are encoded relative to previous
+ * message in the same frame, so every frame can be read alone. Messages are written straight into
+ * one buffer from {@link Server#bufferPool}, that is reused for every frame and encrypted without
+ * copying. If history is response to request, code of every frame is followed by identifier of
+ * request, see {@link RequestHeader}.
+ *
+ * @since 1.0
+ */
+public class HistoryWriter {
+  public static final short NEXT_FRAME_CODE = 16;
+
+  protected final Client client;
+  protected final int maxFrameSize;
+  protected final boolean compact;
+  protected final int requestId;
+  protected short code;
+  protected ByteBuffer buffer;
+  protected int messagesCountPosition;
+  protected int messagesCount = 0;
+  protected int sentMessages = 0;
+  protected boolean sentFirstFrame = false;
+  protected long previousId = 0;
+
+  /**
+   * Constructor for {@link HistoryWriter}.
+   *
+   * @param client       Client, that receives history.
+   * @param code         Code of first frame.
+   * @param users        Users, that are sent in first frame.
+   * @param maxFrameSize Maximum size of frame. First frame is bigger, if users don't fit into it.
+   */
+  public HistoryWriter(Client client, short code, List<User> users, int maxFrameSize) {
+    this.client = client;
+    this.maxFrameSize = maxFrameSize;
+    this.code = code;
+    this.compact = client.compactEncoding;
+    this.requestId = client.getRequestId();
+
+    int usersSize = 0;
+
+    for (User user : users) {
+      usersSize += this.compact ? user.compactSize() : user.byteSize();
+    }
+
+    this.buffer = client.server.bufferPool.acquire(
+        Math.max(maxFrameSize, 2 + RequestHeader.REQUEST_ID_SIZE + 4 + usersSize + 4));
+    this.putCode();
+    this.buffer.putInt(users.size());
+
+    for (User user : users) {
+      if (this.compact) {
+        user.writeCompactTo(this.buffer);
+      } else {
+        user.writeTo(this.buffer);
+      }
+    }
+
+    this.messagesCountPosition = this.buffer.position();
+    this.buffer.putInt(0);
+  }
+
+  /**
+   * Adds message to current frame. If message doesn't fit, current frame is sent first.
+   *
+   * @param message Message to add.
+   */
+  public void add(Message message) {
+    int messageSize = this.encodedSize(message);
+
+    if (this.buffer.remaining() < messageSize) {
+      if (this.messagesCount > 0) {
+        this.flush();
+        // Identifier is encoded relative to previous message, that is in sent frame
+        messageSize = this.encodedSize(message);
+      }
+
+      if (this.buffer.remaining() < messageSize) {
+        // Message is bigger than frame, it's sent in it's own bigger frame
+        ByteBuffer biggerBuffer =
+            this.client.server.bufferPool.acquire(this.buffer.position() + messageSize);
+        biggerBuffer.put(this.buffer.array(), 0, this.buffer.position());
+        this.client.server.bufferPool.release(this.buffer);
+        this.buffer = biggerBuffer;
+      }
+    }
+
+    if (this.compact) {
+      message.writeCompactTo(this.buffer, this.previousId);
+    } else {
+      message.writeTo(this.buffer);
+    }
+
+    this.messagesCount++;
+    this.previousId = message.id;
+  }
+
+  protected void putCode() {
+    if (this.requestId == 0) {
+      this.buffer.putShort(this.code);
+    } else {
+      this.buffer.putShort((short) (this.code | RequestHeader.REQUEST_ID_FLAG));
+      this.buffer.putInt(this.requestId);
+    }
+  }
+
+  protected int encodedSize(Message message) {
+    return this.compact ? message.compactSize(this.previousId) : message.byteSize();
+  }
+
+  /**
+   * Sends last frame and returns buffer to pool. Must be called once after all messages are
+   * added. First frame is always sent, even if there are no messages.
+   *
+   * @return Number of sent messages.
+   */
+  public int finish() {
+    if (this.messagesCount > 0 || !this.sentFirstFrame) {
+      this.flush();
+    }
+
+    this.client.server.bufferPool.release(this.buffer);
+    return this.sentMessages;
+  }
+
+  protected void flush() {
+    this.buffer.putInt(this.messagesCountPosition, this.messagesCount);
+    // History can be larger than queue of client, so writer waits, instead of disconnecting it
+    this.client.sendWaiting(this.buffer.duplicate().flip());
+    this.sentMessages += this.messagesCount;
+    this.sentFirstFrame = true;
+
+    this.code = HistoryWriter.NEXT_FRAME_CODE;
+    this.messagesCount = 0;
+    this.previousId = 0;
+
+    if (this.buffer.limit() != this.maxFrameSize) {
+      this.client.server.bufferPool.release(this.buffer);
+      this.buffer = this.client.server.bufferPool.acquire(this.maxFrameSize);
+    } else {
+      this.buffer.clear().limit(this.maxFrameSize);
+    }
+
+    this.putCode();
+    this.buffer.putInt(0);
+    this.messagesCountPosition = this.buffer.position();
+    this.buffer.putInt(0);
+  }
+}
@@ -0,0 +1,149 @@
+package com.werryxgames.messaje;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking {@link Connection}, that is served by one of {@link NioTransport.IoLoop}.
+ * All reads and writes are done in thread of that loop, other threads only queue packets.
+ *
+ * @since 1.0
+ */
+public class NioConnection implements Connection {
+  public static final int MAX_GATHERED_PACKETS = 64;
+
+  public SocketChannel channel;
+  public Client client;
+  public OutboundQueue outgoing;
+  protected NioTransport.IoLoop loop;
+  protected SelectionKey key = null;
+  protected FrameDecoder frameDecoder;
+  // Set, while loop has this connection in it's pending writes, so wakeups are coalesced
+  protected AtomicBoolean writeRequested = new AtomicBoolean(false);
+  // Length prefix and packet for every gathered packet
+  protected ByteBuffer[] gathered = new ByteBuffer[NioConnection.MAX_GATHERED_PACKETS * 2];
+  protected volatile int gatheredOffset = 0;
+  protected volatile int gatheredCount = 0;
+
+  /**
+   * Constructor for {@link NioConnection}.
+   *
+   * @param loop         Loop, that will serve this connection.
+   * @param channel      Non-blocking channel of connected client.
+   * @param policy       Limits of queued packets.
+   * @param frameDecoder Decoder of received packets.
+   */
+  public NioConnection(NioTransport.IoLoop loop, SocketChannel channel, OutboundPolicy policy,
+      FrameDecoder frameDecoder) {
+    this.loop = loop;
+    this.channel = channel;
+    this.outgoing = new OutboundQueue(policy);
+    // Loop can't wait for room in queue, that only it empties
+    this.outgoing.writerThread = loop.thread;
+    this.frameDecoder = frameDecoder;
+  }
+
+  @Override
+  public InetAddress getAddress() {
+    return this.channel.socket().getInetAddress();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.channel.isOpen();
+  }
+
+  @Override
+  public boolean write(byte[] packet, boolean lowPriority, boolean waitForRoom)
+      throws IOException {
+    if (!this.channel.isOpen()) {
+      throw new EOFException("Connection is closed");
+    }
+
+    if (!this.outgoing.add(packet, lowPriority, waitForRoom)) {
+      return false;
+    }
+
+    if (this.writeRequested.compareAndSet(false, true)) {
+      this.loop.requestWrite(this);
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean hasQueuedPackets() {
+    return !this.outgoing.isEmpty() || this.gatheredOffset != this.gatheredCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.outgoing.clear();
+
+    if (this.key != null) {
+      this.key.cancel();
+    }
+
+    this.channel.close();
+  }
+
+  /**
+   * Reads all available bytes and passes every complete packet to {@link Client}.
+   * Called from thread of {@link NioTransport.IoLoop}.
+   *
+   * @throws IOException Client disconnected or packet is invalid.
+   */
+  void onReadable() throws IOException {
+    ByteBuffer packet;
+
+    while ((packet = this.frameDecoder.read(this.channel)) != null) {
+      this.client.onPacket(packet);
+    }
+  }
+
+  /**
+   * Writes queued packets with gathering writes, until queue is empty or socket buffer is full.
+   * Called from thread of {@link NioTransport.IoLoop}.
+   *
+   * @throws IOException Packets can't be written.
+   */
+  void onWritable() throws IOException {
+    while (true) {
+      if (this.gatheredOffset == this.gatheredCount) {
+        this.gatheredOffset = 0;
+        this.gatheredCount = 0;
+        byte[] packet;
+
+        while (this.gatheredCount < this.gathered.length
+            && (packet = this.outgoing.poll()) != null) {
+          //noinspection ObjectAllocationInLoop
+          this.gathered[this.gatheredCount++] = ByteBuffer.allocate(4).putInt(0, packet.length);
+          this.gathered[this.gatheredCount++] = ByteBuffer.wrap(packet);
+        }
+
+        if (this.gatheredCount == 0) {
+          this.key.interestOps(SelectionKey.OP_READ);
+          return;
+        }
+      }
+
+      this.channel.write(this.gathered, this.gatheredOffset,
+          this.gatheredCount - this.gatheredOffset);
+
+      while (this.gatheredOffset < this.gatheredCount
+          && !this.gathered[this.gatheredOffset].hasRemaining()) {
+        this.gathered[this.gatheredOffset++] = null;
+      }
+
+      if (this.gatheredOffset < this.gatheredCount) {
+        this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.werryxgames.messaje;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link Transport}, that serves all clients with small number of event loops, built on
+ * {@link Selector}. Framing and handling of packets is same, as in {@link BlockingTransport}.
+ *
+ * @since 1.0
+ */
+public class NioTransport implements Transport {
+  public Server server;
+  public ServerSocketChannel channel;
+  protected Selector acceptSelector;
+  protected IoLoop[] loops;
+  protected int nextLoop = 0;
+
+  /**
+   * Constructor for {@link NioTransport}.
+   *
+   * @param server    Instance of {@link Server}.
+   * @param ioThreads Number of event loops (and their threads).
+   */
+  public NioTransport(Server server, int ioThreads) {
+    this.server = server;
+    this.loops = new IoLoop[Math.max(1, ioThreads)];
+  }
+
+  @Override
+  public void bind(String host, int port, int backlog) throws IOException {
+    this.acceptSelector = Selector.open();
+    this.channel = ServerSocketChannel.open();
+    this.channel.bind(new InetSocketAddress(InetAddress.getByName(host), port), backlog);
+    this.channel.configureBlocking(false);
+    this.channel.register(this.acceptSelector, SelectionKey.OP_ACCEPT);
+
+    for (int i = 0; i < this.loops.length; i++) {
+      //noinspection ObjectAllocationInLoop
+      this.loops[i] = new IoLoop();
+      //noinspection ObjectAllocationInLoop
+      Thread thread = new Thread(this.loops[i], "Messaje IO #" + i);
+      this.loops[i].thread = thread;
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  @Override
+  public void acceptLoop() {
+    while (this.channel.isOpen()) {
+      try {
+        this.acceptSelector.select();
+      } catch (IOException e) {
+        this.server.logException(e);
+        continue;
+      }
+
+      if (!this.acceptSelector.isOpen()) {
+        break;
+      }
+
+      this.acceptSelector.selectedKeys().clear();
+      SocketChannel clientChannel;
+
+      try {
+        while ((clientChannel = this.channel.accept()) != null) {
+          if (!this.server.admission.tryAdmit(clientChannel.socket().getInetAddress())) {
+            this.server.logger.fine("Connection rejected (" + this.server.admission + ")");
+            clientChannel.close();
+            continue;
+          }
+
+          try {
+            clientChannel.configureBlocking(false);
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          } catch (IOException e) {
+            this.server.admission.release(clientChannel.socket().getInetAddress());
+            clientChannel.close();
+            throw e;
+          }
+
+          IoLoop loop = this.loops[this.nextLoop];
+          this.nextLoop = (this.nextLoop + 1) % this.loops.length;
+          //noinspection ObjectAllocationInLoop
+          NioConnection connection = new NioConnection(loop, clientChannel,
+              this.server.outboundPolicy,
+              new FrameDecoder(this.server.maxFrameSize, this.server.bufferPool));
+          //noinspection ObjectAllocationInLoop
+          connection.client = new Client(this.server, connection);
+          this.server.sessions.add(connection.client);
+          loop.register(connection);
+          this.server.logger.info("Client connected");
+        }
+      } catch (IOException e) {
+        if (this.channel.isOpen()) {
+          this.server.logException(e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.channel.close();
+      this.acceptSelector.close();
+    } catch (IOException e) {
+      this.server.logException(e);
+    }
+  }
+
+  /**
+   * Event loop, that reads and writes packets of it's connections.
+   *
+   * @since 1.0
+   */
+  public class IoLoop implements Runnable {
+    protected Selector selector;
+    protected ConcurrentLinkedQueue<NioConnection> pendingRegistrations =
+        new ConcurrentLinkedQueue<>();
+    protected ConcurrentLinkedQueue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    // Thread, that runs loop and writes queued packets of it's connections
+    protected volatile Thread thread = null;
+
+    /**
+     * Constructor for {@link IoLoop}.
+     *
+     * @throws IOException Selector can't be opened.
+     */
+    public IoLoop() throws IOException {
+      this.selector = Selector.open();
+    }
+
+    /**
+     * Queues connection for registration in this loop.
+     *
+     * @param connection Accepted connection.
+     */
+    public void register(NioConnection connection) {
+      this.pendingRegistrations.add(connection);
+      this.selector.wakeup();
+    }
+
+    /**
+     * Lets loop know, that connection has queued packets.
+     *
+     * @param connection Connection with queued packets.
+     */
+    public void requestWrite(NioConnection connection) {
+      this.pendingWrites.add(connection);
+      this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (this.selector.isOpen()) {
+        try {
+          this.selector.select();
+        } catch (IOException e) {
+          NioTransport.this.server.logException(e);
+          continue;
+        }
+
+        NioConnection connection;
+
+        while ((connection = this.pendingRegistrations.poll()) != null) {
+          try {
+            connection.key = connection.channel.register(this.selector, SelectionKey.OP_READ,
+                connection);
+          } catch (IOException e) {
+            this.closeConnection(connection, e);
+          }
+        }
+
+        while ((connection = this.pendingWrites.poll()) != null) {
+          connection.writeRequested.set(false);
+
+          if (connection.key == null || !connection.key.isValid()) {
+            continue;
+          }
+
+          try {
+            connection.onWritable();
+          } catch (IOException | CancelledKeyException e) {
+            this.closeConnection(connection, e);
+          } catch (RuntimeException e) {
+            // Broken packet of one client must not stop loop, that serves other clients
+            this.closeConnection(connection, e);
+          }
+        }
+
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          connection = (NioConnection) key.attachment();
+
+          try {
+            if (key.isReadable()) {
+              connection.onReadable();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+              connection.onWritable();
+            }
+          } catch (IOException | CancelledKeyException e) {
+            this.closeConnection(connection, e);
+          } catch (RuntimeException e) {
+            // Broken packet of one client must not stop loop, that serves other clients
+            this.closeConnection(connection, e);
+          }
+        }
+      }
+    }
+
+    protected void closeConnection(NioConnection connection, Exception e) {
+      if (e instanceof EOFException) {
+        NioTransport.this.server.logger.info("Client disconnected");
+      } else if (connection.isOpen()) {
+        NioTransport.this.server.logException(e);
+      }
+
+      connection.client.disconnect();
+      // Only loop reads into decoder, so it's safe to release incomplete packet here
+      connection.frameDecoder.reset();
+    }
+  }
+}
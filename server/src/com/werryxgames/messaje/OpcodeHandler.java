@@ -0,0 +1,19 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handler of one operation code from client, see {@link HandlerRegistry}.
+ *
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface OpcodeHandler {
+  /**
+   * Handles message from client.
+   *
+   * @param client Client, that sent message.
+   * @param buffer Message without operation code.
+   */
+  void handle(Client client, ByteBuffer buffer);
+}
@@ -0,0 +1,17 @@
+package com.werryxgames.messaje;
+
+import java.io.IOException;
+
+/**
+ * Thrown, when client doesn't read packets fast enough and must be disconnected, according to
+ * {@link OutboundPolicy}.
+ *
+ * @since 1.0
+ */
+public class OutboundOverflowException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public OutboundOverflowException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,90 @@
+package com.werryxgames.messaje;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of {@link OutboundQueue} of every client and counters of triggered overflows. Limits can
+ * be changed at any time, they are applied to next queued packets.
+ *
+ * @since 1.0
+ */
+public class OutboundPolicy {
+  public volatile long maxBytes;
+  public volatile int maxPackets;
+  public volatile Overflow overflow;
+  public volatile long blockTimeoutMillis;
+  public volatile long maxWaitMillis;
+  public final AtomicLong blockedPackets = new AtomicLong();
+  public final AtomicLong blockTimeouts = new AtomicLong();
+  public final AtomicLong droppedPackets = new AtomicLong();
+  public final AtomicLong disconnectedClients = new AtomicLong();
+
+  /**
+   * Constructor for {@link OutboundPolicy}.
+   *
+   * @param maxBytes           Maximum size of queued packets of one client.
+   * @param maxPackets         Maximum number of queued packets of one client.
+   * @param overflow           What to do, when client reaches one of limits.
+   * @param blockTimeoutMillis How long producer waits with {@link Overflow#BLOCK}.
+   * @param maxWaitMillis      How long producer waits for room in total, while client keeps
+   *                           reading slowly.
+   */
+  public OutboundPolicy(long maxBytes, int maxPackets, Overflow overflow,
+      long blockTimeoutMillis, long maxWaitMillis) {
+    this.maxBytes = maxBytes;
+    this.maxPackets = maxPackets;
+    this.overflow = overflow;
+    this.blockTimeoutMillis = blockTimeoutMillis;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH,
+        "blocked packets: %d, block timeouts: %d, dropped packets: %d, disconnected clients: %d",
+        this.blockedPackets.get(), this.blockTimeouts.get(), this.droppedPackets.get(),
+        this.disconnectedClients.get());
+  }
+
+  /**
+   * What to do, when packet doesn't fit into {@link OutboundQueue}.
+   *
+   * @since 1.0
+   */
+  public enum Overflow {
+    /**
+     * Producer waits until client reads enough data. If it doesn't happen in time, client is
+     * disconnected.
+     * Thread, that writes to client (IO loop of {@link NioTransport}), doesn't wait and acts like
+     * with {@link Overflow#DROP}.
+     */
+    BLOCK,
+    /**
+     * Low-priority packet is dropped, other packets disconnect client.
+     */
+    DROP,
+    /**
+     * Client is disconnected.
+     */
+    DISCONNECT;
+
+    /**
+     * Finds overflow action by it's name in configuration.
+     *
+     * @param name         Name of action ({@code "block"}, {@code "drop"} or
+     *                     {@code "disconnect"}).
+     * @param defaultValue Value, that is returned, when name is unknown.
+     * @return Found action or {@code defaultValue}.
+     */
+    public static Overflow fromName(String name, Overflow defaultValue) {
+      for (Overflow overflow : Overflow.values()) {
+        if (overflow.name().equalsIgnoreCase(name)) {
+          return overflow;
+        }
+      }
+
+      return defaultValue;
+    }
+  }
+}
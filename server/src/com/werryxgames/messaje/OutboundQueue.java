@@ -0,0 +1,221 @@
+package com.werryxgames.messaje;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of encrypted packets, that are waiting to be written to one client. Packets can be added
+ * from any thread, but only writer of connection takes them. Size of queue is limited by
+ * {@link OutboundPolicy}, limits are soft: concurrent producers can exceed them by few packets.
+ *
+ * @since 1.0
+ */
+public class OutboundQueue {
+  protected OutboundPolicy policy;
+  protected ConcurrentLinkedQueue<byte[]> packets = new ConcurrentLinkedQueue<>();
+  protected AtomicLong queuedBytes = new AtomicLong();
+  protected AtomicInteger queuedPackets = new AtomicInteger();
+  // Number of taken packets, so waiting producer knows, that client still reads
+  protected AtomicLong polledPackets = new AtomicLong();
+  protected ReentrantLock lock = new ReentrantLock();
+  protected Condition dequeued = this.lock.newCondition();
+  protected volatile int waitingProducers = 0;
+  protected volatile boolean closed = false;
+  // Thread, that takes packets, if it's always the same thread. It never waits for room
+  public volatile Thread writerThread = null;
+
+  public OutboundQueue(OutboundPolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * Adds packet to the end of queue, applying {@link OutboundPolicy} if it doesn't fit.
+   *
+   * @param packet      Encrypted packet.
+   * @param lowPriority {@code true} if packet can be dropped, because client can get it's data
+   *                    later.
+   * @return {@code true} if packet is queued, {@code false} if it was dropped.
+   * @throws OutboundOverflowException Client must be disconnected.
+   */
+  public boolean add(byte[] packet, boolean lowPriority) throws OutboundOverflowException {
+    return this.add(packet, lowPriority, false);
+  }
+
+  /**
+   * Adds packet to the end of queue, applying {@link OutboundPolicy} if it doesn't fit.
+   *
+   * @param packet      Encrypted packet.
+   * @param lowPriority {@code true} if packet can be dropped, because client can get it's data
+   *                    later.
+   * @param waitForRoom {@code true} if producer waits for room with any
+   *                    {@link OutboundPolicy#overflow}, while client keeps reading. Client is
+   *                    disconnected, if it doesn't read anything for
+   *                    {@link OutboundPolicy#blockTimeoutMillis} or if producer waits longer,
+   *                    than {@link OutboundPolicy#maxWaitMillis}. Used for large replies, like
+   *                    history, that client asked for.
+   * @return {@code true} if packet is queued, {@code false} if it was dropped.
+   * @throws OutboundOverflowException Client must be disconnected.
+   */
+  public boolean add(byte[] packet, boolean lowPriority, boolean waitForRoom)
+      throws OutboundOverflowException {
+    if (!this.hasRoom(packet.length)) {
+      OutboundPolicy.Overflow overflow =
+          waitForRoom ? OutboundPolicy.Overflow.BLOCK : this.policy.overflow;
+
+      if (overflow == OutboundPolicy.Overflow.BLOCK
+          && Thread.currentThread() == this.writerThread) {
+        // Waiting in writer would only time out, because nobody else takes packets
+        overflow = OutboundPolicy.Overflow.DROP;
+      }
+
+      switch (overflow) {
+        case BLOCK -> {
+          this.policy.blockedPackets.incrementAndGet();
+
+          if (!this.awaitRoom(packet.length, waitForRoom)) {
+            this.policy.blockTimeouts.incrementAndGet();
+            this.policy.disconnectedClients.incrementAndGet();
+            throw new OutboundOverflowException("Client didn't read queued packets in time");
+          }
+        }
+        case DROP -> {
+          if (lowPriority) {
+            this.policy.droppedPackets.incrementAndGet();
+            return false;
+          }
+
+          this.policy.disconnectedClients.incrementAndGet();
+          throw new OutboundOverflowException("Queue is full, packet can't be dropped");
+        }
+        default -> {
+          this.policy.disconnectedClients.incrementAndGet();
+          throw new OutboundOverflowException("Queue is full");
+        }
+      }
+    }
+
+    this.queuedBytes.addAndGet(packet.length);
+    this.queuedPackets.incrementAndGet();
+    this.packets.add(packet);
+    return true;
+  }
+
+  /**
+   * Takes first packet from queue.
+   *
+   * @return First packet, or {@code null} if queue is empty.
+   */
+  public byte[] poll() {
+    byte[] packet = this.packets.poll();
+
+    if (packet == null) {
+      return null;
+    }
+
+    this.queuedBytes.addAndGet(-packet.length);
+    this.queuedPackets.decrementAndGet();
+    this.polledPackets.incrementAndGet();
+
+    if (this.waitingProducers > 0) {
+      this.signal();
+    }
+
+    return packet;
+  }
+
+  public boolean isEmpty() {
+    return this.packets.isEmpty();
+  }
+
+  /**
+   * Returns total size of queued packets.
+   *
+   * @return Size of queued packets in bytes.
+   */
+  public long size() {
+    return this.queuedBytes.get();
+  }
+
+  /**
+   * Removes all queued packets and wakes up waiting producers.
+   */
+  public void clear() {
+    this.closed = true;
+
+    while (this.poll() != null) {
+      // Counters are updated by poll()
+    }
+
+    this.signal();
+  }
+
+  /**
+   * Checks, can packet be added without exceeding limits. Packet, that is larger, than
+   * {@link OutboundPolicy#maxBytes}, fits only into empty queue.
+   *
+   * @param packetLength Length of packet.
+   * @return {@code true} if packet fits.
+   */
+  protected boolean hasRoom(int packetLength) {
+    int packets = this.queuedPackets.get();
+
+    if (packets == 0) {
+      return true;
+    }
+
+    return packets < this.policy.maxPackets
+        && this.queuedBytes.get() + packetLength <= this.policy.maxBytes;
+  }
+
+  protected boolean awaitRoom(int packetLength, boolean whileReading) {
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(this.policy.blockTimeoutMillis);
+    long remainingNanos = timeoutNanos;
+    // Reading client resets timeout, but not deadline, so slow client can't hold producer forever
+    long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(Math.max(this.policy.maxWaitMillis, 0));
+    long polled = this.polledPackets.get();
+    this.lock.lock();
+    this.waitingProducers++;
+
+    try {
+      while (!this.hasRoom(packetLength)) {
+        if (whileReading && this.polledPackets.get() != polled) {
+          // Client is slow, but still reads, so it's not disconnected
+          polled = this.polledPackets.get();
+          remainingNanos = timeoutNanos;
+        }
+
+        long untilDeadline = deadline - System.nanoTime();
+
+        if (this.closed || remainingNanos <= 0 || untilDeadline <= 0) {
+          return false;
+        }
+
+        long waitNanos = Math.min(remainingNanos, untilDeadline);
+        remainingNanos -= waitNanos - this.dequeued.awaitNanos(waitNanos);
+      }
+
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      this.waitingProducers--;
+      this.lock.unlock();
+    }
+  }
+
+  protected void signal() {
+    this.lock.lock();
+
+    try {
+      this.dequeued.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.werryxgames.messaje;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ConnectionExecutor}, that runs every task in platform thread. Threads of disconnected
+ * clients are reused.
+ *
+ * @since 1.0
+ */
+public class PlatformConnectionExecutor implements ConnectionExecutor {
+  protected AtomicInteger threadNumber = new AtomicInteger();
+  protected ExecutorService executor = Executors.newCachedThreadPool(
+      runnable -> new Thread(runnable, "Messaje client #" + this.threadNumber.getAndIncrement()));
+
+  @Override
+  public void execute(Runnable command) {
+    this.executor.execute(command);
+  }
+
+  @Override
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+}
@@ -0,0 +1,54 @@
+package com.werryxgames.messaje;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor, that runs tasks one by one in order they were added, using threads of another
+ * executor.
+ *
+ * @since 1.0
+ */
+public class SerialExecutor implements Executor {
+  protected final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  protected Executor executor;
+  protected Runnable active = null;
+
+  /**
+   * Constructor for {@link SerialExecutor}.
+   *
+   * @param executor Executor, that will run tasks.
+   */
+  public SerialExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public synchronized void execute(Runnable command) {
+    this.tasks.add(() -> {
+      try {
+        command.run();
+      } finally {
+        this.scheduleNext();
+      }
+    });
+
+    if (this.active == null) {
+      this.scheduleNext();
+    }
+  }
+
+  protected synchronized void scheduleNext() {
+    this.active = this.tasks.poll();
+
+    if (this.active != null) {
+      try {
+        this.executor.execute(this.active);
+      } catch (RejectedExecutionException e) {
+        this.active = null;
+        throw e;
+      }
+    }
+  }
+}
@@ -4,18 +4,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
@@ -32,16 +36,71 @@ import javax.crypto.SecretKey;
 public class Server {
   public static final String HOST = Config.get("server.host", "0.0.0.0");
   public static final int PORT = Config.get("server.port", 9451);
-  public static final int MAX_PENDING_CONNECTIONS = Config.get("server.maxPendingConnections", 8);
+  public static final int MAX_PENDING_CONNECTIONS = Config.get("server.maxPendingConnections",
+      1024);
+  public static final int MAX_CONNECTIONS = Config.get("server.maxConnections", 10000);
+  public static final int MAX_CONNECTIONS_PER_IP = Config.get("server.maxConnectionsPerIp", 32);
+  public static final int ACCEPT_RATE = Config.get("server.acceptRate", 200);
+  public static final int ACCEPT_BURST = Config.get("server.acceptBurst", 500);
+  public static final String TRANSPORT = Config.get("server.transport", "blocking");
+  public static final int IO_THREADS = Config.get("server.ioThreads", 2);
+  public static final int MAX_FRAME_SIZE = Config.get("server.maxFrameSize", 1024 * 1024);
+  public static final int IDLE_TIMEOUT = Config.get("server.idleTimeout", 30);
+  public static final int SHUTDOWN_TIMEOUT = Config.get("server.shutdownTimeout", 10);
+  public static final int RECONNECT_DELAY = Config.get("server.reconnectDelay", 5000);
+  public static final String EXECUTOR = Config.get("server.executor", "platform");
+  public static final int DB_THREADS = Config.get("server.dbThreads", 4);
+  public static final String CIPHER_SUITES = Config.get("server.cipherSuites",
+      "aes-gcm,chacha20-poly1305");
+  public static final String SESSION_SECRET = Config.get("server.sessionSecret", "");
+  public static final int SESSION_LIFETIME = Config.get("server.sessionLifetime", 7 * 24 * 60 * 60);
+  public static final int FAN_OUT_THREADS = Config.get("server.fanOutThreads", 2);
+  public static final int OUTBOUND_MAX_BYTES = Config.get("server.outboundMaxBytes",
+      4 * 1024 * 1024);
+  public static final int OUTBOUND_MAX_PACKETS = Config.get("server.outboundMaxPackets", 1024);
+  public static final String OUTBOUND_OVERFLOW = Config.get("server.outboundOverflow", "drop");
+  public static final int OUTBOUND_BLOCK_TIMEOUT = Config.get("server.outboundBlockTimeout", 100);
+  public static final int OUTBOUND_MAX_WAIT = Config.get("server.outboundMaxWait", 10000);
+  public static final int CONFIG_RELOAD_INTERVAL = Config.get("server.configReloadInterval", 5);
+  public static final int HISTORY_FRAME_SIZE = Config.get("server.historyFrameSize", 64 * 1024);
+  public static final int HISTORY_PAGE_SIZE = Config.get("server.historyPageSize", 100);
+  public static final boolean COMPRESSION = Config.get("server.compression", true);
+  public static final int BATCH_WINDOW = Config.get("server.batchWindow", 2);
+  public static final boolean COMPACT_ENCODING = Config.get("server.compactEncoding", true);
   @SuppressWarnings("HardcodedFileSeparator")
   private static final String DB_URL = Config.get("db.url", "127.0.0.1/messaje");
   private static final String DB_USER = Config.get("db.user", "werryx");
   private static final String DB_PASSWORD = Config.get("db.password", "1234");
 
   public Logger logger;
-  public ServerSocket socket;
+  public Transport transport;
+  public ConnectionExecutor connectionExecutor;
+  public ThreadPoolExecutor dbExecutor = this.createDbPool();
+  public ThreadPoolExecutor fanOutExecutor = Server.createPool("Messaje fan-out #",
+      Server.FAN_OUT_THREADS);
+  public HandlerRegistry handlers = new HandlerRegistry(this);
+  public CipherSuite[] cipherSuites = CipherSuite.parseList(Server.CIPHER_SUITES);
+  public SessionTokens sessionTokens;
+  public BufferPool bufferPool = BufferPool.DEFAULT;
+  public AtomicInteger activeHandlers = new AtomicInteger();
+  public volatile int maxFrameSize = Server.MAX_FRAME_SIZE;
+  public volatile int historyFrameSize = Server.HISTORY_FRAME_SIZE;
+  public volatile int batchWindow = Server.BATCH_WINDOW;
+  protected volatile boolean shuttingDown = false;
+  public ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      runnable -> {
+        Thread thread = new Thread(runnable, "Messaje scheduler");
+        thread.setDaemon(true);
+        return thread;
+      });
+  public OutboundPolicy outboundPolicy = new OutboundPolicy(Server.OUTBOUND_MAX_BYTES,
+      Server.OUTBOUND_MAX_PACKETS,
+      OutboundPolicy.Overflow.fromName(Server.OUTBOUND_OVERFLOW, OutboundPolicy.Overflow.DROP),
+      Server.OUTBOUND_BLOCK_TIMEOUT, Server.OUTBOUND_MAX_WAIT);
+  public AdmissionController admission = new AdmissionController(Server.MAX_CONNECTIONS,
+      Server.MAX_CONNECTIONS_PER_IP, Server.ACCEPT_RATE, Server.ACCEPT_BURST);
   public Database db;
-  protected ArrayList<Client> clients = new ArrayList<>(8);
+  public SessionRegistry sessions = new SessionRegistry();
 
   /**
    * Main entry point.
@@ -98,6 +157,149 @@ public class Server {
     }
   }
 
+  /**
+   * Creates fixed thread pool with named daemon threads.
+   *
+   * @param name    Name of threads, that is followed by number of thread.
+   * @param threads Number of threads.
+   * @return Created pool.
+   */
+  public static ThreadPoolExecutor createPool(String name, int threads) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    int size = Math.max(1, threads);
+    return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, name + threadNumber.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Creates pool for {@link Server#dbExecutor}, like {@link Server#createPool(String, int)}.
+   * Every thread of pool has it's own database connection, that is closed, when thread stops, and
+   * replaced before next task, when connection parameters change.
+   *
+   * @return New pool.
+   */
+  protected ThreadPoolExecutor createDbPool() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    int size = Math.max(1, Server.DB_THREADS);
+    return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(() -> {
+            try {
+              runnable.run();
+            } finally {
+              if (this.db != null) {
+                this.db.closeThreadConnection();
+              }
+            }
+          }, "Messaje DB #" + threadNumber.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }) {
+      @Override
+      protected void beforeExecute(Thread thread, Runnable task) {
+        // Connection is replaced between tasks, so reload doesn't break running queries
+        if (Server.this.db != null) {
+          Server.this.db.refreshConnection();
+        }
+      }
+    };
+  }
+
+  /**
+   * Changes number of threads of pool, created by {@link Server#createPool(String, int)}.
+   * Running tasks are not interrupted, extra threads stop after finishing them.
+   *
+   * @param pool    Pool to resize.
+   * @param threads New number of threads.
+   */
+  public static void resizePool(ThreadPoolExecutor pool, int threads) {
+    int size = Math.max(1, threads);
+
+    // Core size can't be greater than maximum size at any moment
+    if (size < pool.getCorePoolSize()) {
+      pool.setCorePoolSize(size);
+      pool.setMaximumPoolSize(size);
+    } else {
+      pool.setMaximumPoolSize(size);
+      pool.setCorePoolSize(size);
+    }
+  }
+
+  /**
+   * Applies changed configuration to running server. Only limits and sizes are applied, host,
+   * port, transport and other values, used on start, require restart.
+   *
+   * @param previous Previous configuration.
+   * @param current  New configuration.
+   */
+  public void onConfigChanged(ConfigSnapshot previous, ConfigSnapshot current) {
+    this.admission.maxConnections = current.get("server.maxConnections", Server.MAX_CONNECTIONS);
+    this.admission.maxConnectionsPerIp = current.get("server.maxConnectionsPerIp",
+        Server.MAX_CONNECTIONS_PER_IP);
+    this.admission.acceptRate = current.get("server.acceptRate", Server.ACCEPT_RATE);
+    this.admission.acceptBurst = current.get("server.acceptBurst", Server.ACCEPT_BURST);
+    this.outboundPolicy.maxBytes = current.get("server.outboundMaxBytes",
+        Server.OUTBOUND_MAX_BYTES);
+    this.outboundPolicy.maxPackets = current.get("server.outboundMaxPackets",
+        Server.OUTBOUND_MAX_PACKETS);
+    this.outboundPolicy.overflow = OutboundPolicy.Overflow.fromName(
+        current.get("server.outboundOverflow", Server.OUTBOUND_OVERFLOW),
+        this.outboundPolicy.overflow);
+    this.outboundPolicy.blockTimeoutMillis = current.get("server.outboundBlockTimeout",
+        Server.OUTBOUND_BLOCK_TIMEOUT);
+    this.outboundPolicy.maxWaitMillis = current.get("server.outboundMaxWait",
+        Server.OUTBOUND_MAX_WAIT);
+    this.maxFrameSize = current.get("server.maxFrameSize", Server.MAX_FRAME_SIZE);
+    this.historyFrameSize = current.get("server.historyFrameSize", Server.HISTORY_FRAME_SIZE);
+    this.batchWindow = current.get("server.batchWindow", Server.BATCH_WINDOW);
+    Server.resizePool(this.dbExecutor, current.get("server.dbThreads", Server.DB_THREADS));
+    Server.resizePool(this.fanOutExecutor,
+        current.get("server.fanOutThreads", Server.FAN_OUT_THREADS));
+    this.logger.info("Configuration reloaded");
+  }
+
+  /**
+   * Checks properties file for changes, see {@link Config#reload()}. Errors are logged, so
+   * scheduled checks are not stopped by them.
+   */
+  public void reloadConfig() {
+    try {
+      Config.reload();
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      this.logger.log(Level.WARNING, "Can't reload configuration: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Binds handlers of all operation codes. Operations, that use database, run in
+   * {@link Server#dbExecutor}, cheap operations run right in thread, that received them.
+   */
+  public void registerHandlers() {
+    this.handlers.register((short) 0, "register", Client::handleRegister, this.dbExecutor);
+    this.handlers.register((short) 1, "login", Client::handleLogin, this.dbExecutor);
+    this.handlers.register((short) 2, "history", Client::handleHistory, this.dbExecutor);
+    this.handlers.register((short) 3, "send message", Client::handleSendMessage,
+        this.dbExecutor);
+    this.handlers.register((short) 4, "find contact", Client::handleFindContact,
+        this.dbExecutor);
+    this.handlers.register((short) 5, "ping", Client::handlePing, HandlerRegistry.INLINE);
+    // Must be inline, next packet from client is decrypted with chosen suite
+    this.handlers.register((short) 6, "hello", Client::handleHello, HandlerRegistry.INLINE);
+    // Inline, so account is set before requests, that client sent right after it
+    this.handlers.register((short) 7, "resume", Client::handleResume, HandlerRegistry.INLINE);
+    this.handlers.register((short) 8, "history since", Client::handleHistorySince,
+        this.dbExecutor);
+    this.handlers.register((short) 9, "history page", Client::handleHistoryPage,
+        this.dbExecutor);
+    // Inline, so packets of batch are dispatched in order, like separate packets
+    this.handlers.register(Batch.CLIENT_CODE, "batch", Client::handleBatch,
+        HandlerRegistry.INLINE);
+  }
+
   /**
    * Starts server.
    *
@@ -127,9 +329,22 @@ public class Server {
     this.logger.addHandler(fileHandler);
     this.logger.setUseParentHandlers(false);
 
+    this.connectionExecutor = this.createConnectionExecutor(Server.EXECUTOR);
+    this.sessionTokens = this.createSessionTokens();
+    this.registerHandlers();
+
+    if (Objects.equals(Server.TRANSPORT, "nio")) {
+      this.transport = new NioTransport(this, Server.IO_THREADS);
+    } else {
+      if (!Objects.equals(Server.TRANSPORT, "blocking")) {
+        this.logger.warning("Unknown transport '" + Server.TRANSPORT + "', using 'blocking'");
+      }
+
+      this.transport = new BlockingTransport(this);
+    }
+
     try {
-      this.socket = new ServerSocket(Server.PORT, Server.MAX_PENDING_CONNECTIONS,
-          InetAddress.getByName(Server.HOST));
+      this.transport.bind(Server.HOST, Server.PORT, Server.MAX_PENDING_CONNECTIONS);
     } catch (IOException e) {
       this.logException(e);
       return;
@@ -148,26 +363,163 @@ public class Server {
       return;
     }
 
+    Config.addListener(this::onConfigChanged);
+    Config.addListener(this.db);
+
+    if (Server.CONFIG_RELOAD_INTERVAL > 0 && Config.getPropertiesFile() == null) {
+      this.logger.warning("Configuration is loaded from archive and can't be checked for changes,"
+          + " put " + Config.DEFAULT_PROPERTIES_PATH + " into working directory or set it's path"
+          + " with -D" + Config.PATH_PROPERTY + "=<path>");
+    } else if (Server.CONFIG_RELOAD_INTERVAL > 0) {
+      this.logger.info("Configuration is checked for changes in "
+          + Config.getPropertiesFile().getAbsolutePath());
+      this.scheduler.scheduleWithFixedDelay(this::reloadConfig, Server.CONFIG_RELOAD_INTERVAL,
+          Server.CONFIG_RELOAD_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    long reapPeriod = Math.max(1000, Server.IDLE_TIMEOUT * 1000L / 4);
+    this.scheduler.scheduleAtFixedRate(this::disconnectIdleClients, reapPeriod, reapPeriod,
+        TimeUnit.MILLISECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "Messaje shutdown"));
     this.logger.info("Server started");
     this.acceptLoop();
   }
 
   /**
-   * Enters infinite loop, accepting clients and creating {@link Client} for each of them.
+   * Creates {@link ConnectionExecutor} by it's name.
+   *
+   * @param name {@code "platform"} or {@code "virtual"}.
+   * @return Created executor. If executor can't be created, {@link PlatformConnectionExecutor}.
+   */
+  public ConnectionExecutor createConnectionExecutor(String name) {
+    if (Objects.equals(name, "virtual")) {
+      try {
+        // Loaded by name, because it exists only in Java 21 builds
+        return (ConnectionExecutor) Class.forName(
+                "com.werryxgames.messaje.VirtualConnectionExecutor").getDeclaredConstructor()
+            .newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        this.logger.warning(
+            "Virtual threads are not available (build server with '-PserverJava=21' and run it "
+                + "on Java 21+), using 'platform' executor");
+      }
+    } else if (!Objects.equals(name, "platform")) {
+      this.logger.warning("Unknown executor '" + name + "', using 'platform'");
+    }
+
+    return new PlatformConnectionExecutor();
+  }
+
+  /**
+   * Creates {@link SessionTokens} with secret from {@link Server#SESSION_SECRET}. If it's not
+   * set, random secret is used, so tokens become invalid after restart.
+   *
+   * @return Created session tokens.
+   */
+  public SessionTokens createSessionTokens() {
+    byte[] secret;
+
+    if (Server.SESSION_SECRET.isEmpty()) {
+      this.logger.warning("'server.sessionSecret' is not set, clients will have to log in again "
+          + "after server restart");
+      secret = new byte[32];
+      Aes.generateBytes(secret);
+    } else {
+      secret = Utils.hexToBytes(Server.SESSION_SECRET);
+    }
+
+    return new SessionTokens(secret, Server.SESSION_LIFETIME * 1000L);
+  }
+
+  /**
+   * Disconnects clients, that didn't send anything (including pings) for
+   * {@link Server#IDLE_TIMEOUT} seconds.
+   */
+  public void disconnectIdleClients() {
+    long minReceiveTime = System.currentTimeMillis() - Server.IDLE_TIMEOUT * 1000L;
+
+    for (Client client : this.sessions.all()) {
+      if (client.getLastReceiveTime() < minReceiveTime) {
+        this.logger.info("Disconnecting idle client");
+        client.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Enters loop, accepting clients and creating {@link Client} for each of them, using
+   * {@link Server#transport}.
    */
   public void acceptLoop() {
-    //noinspection InfiniteLoopStatement
-    while (true) {
+    this.transport.acceptLoop();
+  }
+
+  /**
+   * Stops server: stops accepting clients, asks connected clients to reconnect later, waits up to
+   * {@link Server#SHUTDOWN_TIMEOUT} seconds for running handlers and queued packets, then
+   * disconnects everyone and closes database. Called from shutdown hook.
+   */
+  public void shutdown() {
+    if (this.shuttingDown) {
+      return;
+    }
+
+    this.shuttingDown = true;
+    this.logger.info("Shutting down server");
+    this.transport.close();
+    // Clients reconnect after random delay up to RECONNECT_DELAY, so they don't come all at once
+    ByteBuffer reconnectBuffer = ByteBuffer.allocate(2 + 4).putShort((short) 12)
+        .putInt(Server.RECONNECT_DELAY);
+
+    for (Client client : this.sessions.all()) {
+      client.send(reconnectBuffer);
+    }
+
+    long deadline = System.currentTimeMillis() + Server.SHUTDOWN_TIMEOUT * 1000L;
+
+    while (!this.isDrained() && System.currentTimeMillis() < deadline) {
       try {
-        //noinspection ObjectAllocationInLoop
-        clients.add(new Client(this, this.socket.accept()));
-      } catch (IOException e) {
-        this.logException(e);
-        continue;
+        //noinspection BusyWait
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        break;
       }
+    }
+
+    if (!this.isDrained()) {
+      this.logger.warning("Not all packets were sent before shutdown timeout");
+    }
 
-      this.logger.info("Client connected");
+    for (Client client : this.sessions.all()) {
+      client.disconnect();
     }
+
+    this.scheduler.shutdownNow();
+    this.connectionExecutor.shutdown();
+    this.dbExecutor.shutdown();
+    this.fanOutExecutor.shutdown();
+    this.logger.info("Handlers: " + this.handlers);
+    this.db.close();
+    this.logger.info("Server stopped");
+  }
+
+  /**
+   * Checks, that no handler is running and all queued packets are written.
+   *
+   * @return {@code true} if there is nothing to wait for.
+   */
+  protected boolean isDrained() {
+    if (this.activeHandlers.get() > 0) {
+      return false;
+    }
+
+    for (Client client : this.sessions.all()) {
+      if (client.connection.hasQueuedPackets()) {
+        return false;
+      }
+    }
+
+    return true;
   }
 
   public void logException(Exception e, Level level) {
@@ -0,0 +1,113 @@
+package com.werryxgames.messaje;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of all connected clients, indexed by identifier of account, they are logged in to.
+ * Safe to use from any thread.
+ *
+ * @since 1.0
+ */
+public class SessionRegistry {
+  protected Set<Client> clients = ConcurrentHashMap.newKeySet();
+  protected ConcurrentHashMap<Long, Set<Client>> accounts = new ConcurrentHashMap<>();
+
+  /**
+   * Adds newly connected client.
+   *
+   * @param client Connected client.
+   */
+  public void add(Client client) {
+    this.clients.add(client);
+  }
+
+  /**
+   * Binds client to account, after client logged in to it.
+   *
+   * @param client    Connected client.
+   * @param accountId Identifier of account.
+   */
+  public void bind(Client client, long accountId) {
+    this.accounts.compute(accountId, (id, sessions) -> {
+      if (sessions == null) {
+        sessions = ConcurrentHashMap.newKeySet();
+      }
+
+      sessions.add(client);
+      return sessions;
+    });
+
+    // Client could disconnect while it was logging in
+    if (!this.clients.contains(client)) {
+      this.unbind(client, accountId);
+    }
+  }
+
+  /**
+   * Unbinds client from account. Does nothing, if client isn't bound to it.
+   *
+   * @param client    Connected client.
+   * @param accountId Identifier of account.
+   */
+  public void unbind(Client client, long accountId) {
+    this.accounts.computeIfPresent(accountId, (id, sessions) -> {
+      sessions.remove(client);
+      return sessions.isEmpty() ? null : sessions;
+    });
+  }
+
+  /**
+   * Removes disconnected client.
+   *
+   * @param client Disconnected client.
+   * @return {@code true} if client was removed, {@code false} if it was removed earlier.
+   */
+  public boolean remove(Client client) {
+    if (!this.clients.remove(client)) {
+      return false;
+    }
+
+    if (client.accountId != 0) {
+      this.unbind(client, client.accountId);
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns all clients, logged in to account.
+   *
+   * @param accountId Identifier of account.
+   * @return Clients, logged in to account. Empty, if there are no such clients.
+   */
+  public Set<Client> get(long accountId) {
+    Set<Client> sessions = this.accounts.get(accountId);
+
+    if (sessions == null) {
+      return Collections.emptySet();
+    }
+
+    return sessions;
+  }
+
+  /**
+   * Returns all connected clients.
+   *
+   * @return Unmodifiable view of connected clients.
+   */
+  public Collection<Client> all() {
+    return Collections.unmodifiableSet(this.clients);
+  }
+
+  /**
+   * Returns number of connected clients.
+   *
+   * @return Number of connected clients.
+   */
+  public int size() {
+    return this.clients.size();
+  }
+}
@@ -0,0 +1,93 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies signed session tokens, so reconnected client can log in to it's account
+ * again without password and without database. Token is identifier of account and expiration
+ * time, followed by their HMAC-SHA256.
+ *
+ * @since 1.0
+ */
+public class SessionTokens {
+  public static final String ALGORITHM = "HmacSHA256";
+  public static final int TOKEN_SIZE = 8 + 8 + 32;
+
+  protected SecretKeySpec secret;
+  protected long lifetime;
+  // Mac is not thread-safe
+  protected ThreadLocal<Mac> threadMac = new ThreadLocal<>();
+
+  /**
+   * Constructor for {@link SessionTokens}.
+   *
+   * @param secret   Secret key of server, that signs tokens. Must be known only by server.
+   * @param lifetime Time in milliseconds, while token can be used.
+   */
+  public SessionTokens(byte[] secret, long lifetime) {
+    this.secret = new SecretKeySpec(secret, SessionTokens.ALGORITHM);
+    this.lifetime = lifetime;
+  }
+
+  /**
+   * Issues new token for account.
+   *
+   * @param accountId Identifier of account.
+   * @return Token of {@link SessionTokens#TOKEN_SIZE} bytes.
+   * @throws NoSuchAlgorithmException HMAC-SHA256 is not supported.
+   * @throws InvalidKeyException      Secret key can't be used.
+   */
+  public byte[] issue(long accountId) throws NoSuchAlgorithmException, InvalidKeyException {
+    ByteBuffer token = ByteBuffer.allocate(SessionTokens.TOKEN_SIZE);
+    token.putLong(accountId).putLong(System.currentTimeMillis() + this.lifetime);
+    token.put(this.sign(token.array()));
+    return token.array();
+  }
+
+  /**
+   * Reads and verifies token.
+   *
+   * @param buffer Buffer with at least {@link SessionTokens#TOKEN_SIZE} remaining bytes.
+   * @return Identifier of account, or {@code 0}, if token is forged or expired.
+   * @throws NoSuchAlgorithmException HMAC-SHA256 is not supported.
+   * @throws InvalidKeyException      Secret key can't be used.
+   */
+  public long verify(ByteBuffer buffer) throws NoSuchAlgorithmException, InvalidKeyException {
+    byte[] token = new byte[SessionTokens.TOKEN_SIZE];
+    buffer.get(token);
+    byte[] signature = new byte[SessionTokens.TOKEN_SIZE - 16];
+    System.arraycopy(token, 16, signature, 0, signature.length);
+
+    // Constant-time comparison, so signature can't be guessed byte by byte
+    if (!MessageDigest.isEqual(this.sign(token), signature)) {
+      return 0;
+    }
+
+    ByteBuffer tokenBuffer = ByteBuffer.wrap(token);
+    long accountId = tokenBuffer.getLong();
+
+    if (tokenBuffer.getLong() < System.currentTimeMillis()) {
+      return 0;
+    }
+
+    return accountId;
+  }
+
+  protected byte[] sign(byte[] token) throws NoSuchAlgorithmException, InvalidKeyException {
+    Mac mac = this.threadMac.get();
+
+    if (mac == null) {
+      mac = Mac.getInstance(SessionTokens.ALGORITHM);
+      mac.init(this.secret);
+      this.threadMac.set(mac);
+    }
+
+    mac.update(token, 0, 16);
+    return mac.doFinal();
+  }
+}
@@ -0,0 +1,119 @@
+package com.werryxgames.messaje;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Blocking {@link Connection}, that uses {@link Socket} streams. Packets are read by thread,
+ * running {@link Client#receiveHandleLoop()}, and written by writer task, that is started in
+ * {@code writerExecutor} only when there are queued packets.
+ *
+ * @since 1.0
+ */
+public class SocketConnection implements Connection {
+  public static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  public Socket socket;
+  public DataInputStream inputStream;
+  public DataOutputStream outputStream;
+  public OutboundQueue outgoing;
+  public FrameDecoder frameDecoder;
+  protected Executor writerExecutor;
+  protected AtomicBoolean writing = new AtomicBoolean(false);
+
+  /**
+   * Constructor for {@link SocketConnection}.
+   *
+   * @param socket         Socket of connected client.
+   * @param writerExecutor Executor, that will run writer task.
+   * @param policy         Limits of queued packets.
+   * @param frameDecoder   Decoder of received packets.
+   * @throws IOException Streams of socket can't be opened.
+   */
+  public SocketConnection(Socket socket, Executor writerExecutor, OutboundPolicy policy,
+      FrameDecoder frameDecoder) throws IOException {
+    this.socket = socket;
+    this.outgoing = new OutboundQueue(policy);
+    this.frameDecoder = frameDecoder;
+    this.writerExecutor = writerExecutor;
+    this.inputStream = new DataInputStream(socket.getInputStream());
+    this.outputStream = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream(), SocketConnection.WRITE_BUFFER_SIZE));
+  }
+
+  @Override
+  public InetAddress getAddress() {
+    return this.socket.getInetAddress();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.socket.isConnected() && !this.socket.isClosed();
+  }
+
+  @Override
+  public boolean write(byte[] packet, boolean lowPriority, boolean waitForRoom)
+      throws IOException {
+    if (this.socket.isClosed()) {
+      throw new EOFException("Connection is closed");
+    }
+
+    if (!this.outgoing.add(packet, lowPriority, waitForRoom)) {
+      return false;
+    }
+
+    if (this.writing.compareAndSet(false, true)) {
+      this.writerExecutor.execute(this::writeLoop);
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes all queued packets and flushes them at once. Only one writer task of connection runs at
+   * a time.
+   */
+  protected void writeLoop() {
+    do {
+      try {
+        byte[] packet;
+
+        while ((packet = this.outgoing.poll()) != null) {
+          this.outputStream.writeInt(packet.length);
+          this.outputStream.write(packet);
+        }
+
+        this.outputStream.flush();
+      } catch (IOException e) {
+        // Reading thread will notice closed socket and disconnect client
+        this.outgoing.clear();
+
+        try {
+          this.socket.close();
+        } catch (IOException ignored) {
+          // Already closed
+        }
+      } finally {
+        this.writing.set(false);
+      }
+    } while (!this.outgoing.isEmpty() && this.writing.compareAndSet(false, true));
+  }
+
+  @Override
+  public boolean hasQueuedPackets() {
+    return !this.outgoing.isEmpty() || this.writing.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.socket.close();
+    this.outgoing.clear();
+  }
+}
@@ -0,0 +1,30 @@
+package com.werryxgames.messaje;
+
+import java.io.IOException;
+
+/**
+ * Way, how {@link Server} accepts clients and moves their packets.
+ *
+ * @since 1.0
+ */
+public interface Transport {
+  /**
+   * Binds transport to address.
+   *
+   * @param host    Host, that transport will listen on.
+   * @param port    Port, that transport will listen on.
+   * @param backlog Maximum number of pending connections.
+   * @throws IOException Transport can't be bound.
+   */
+  void bind(String host, int port, int backlog) throws IOException;
+
+  /**
+   * Accepts clients and creates {@link Client} for each of them, until transport is closed.
+   */
+  void acceptLoop();
+
+  /**
+   * Stops accepting new clients.
+   */
+  void close();
+}
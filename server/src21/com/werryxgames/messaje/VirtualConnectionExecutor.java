@@ -0,0 +1,25 @@
+package com.werryxgames.messaje;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link ConnectionExecutor}, that runs every task in virtual thread. Requires Java 21, so it is
+ * compiled only when server is built with {@code -PserverJava=21}.
+ *
+ * @since 1.0
+ */
+public class VirtualConnectionExecutor implements ConnectionExecutor {
+  protected ExecutorService executor = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("Messaje client #", 0).factory());
+
+  @Override
+  public void execute(Runnable command) {
+    this.executor.execute(command);
+  }
+
+  @Override
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+}
@@ -0,0 +1,98 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of encrypting and decrypting one packet with {@link Aes}. {@code newCipher*}
+ * benchmarks create {@link Cipher} for every packet, like {@link Aes} did before it cached them.
+ *
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AesBenchmark {
+  @Param({"64", "1024", "16384"})
+  public int packetSize;
+
+  protected SecretKey key;
+  protected IvParameterSpec iv;
+  protected byte[] ivBytes;
+  protected byte[] packet;
+  protected byte[] encryptedPacket;
+  protected ByteBuffer packetBuffer;
+  protected ByteBuffer encryptedBuffer;
+
+  /**
+   * Creates key and packets.
+   *
+   * @throws GeneralSecurityException AES-GCM is not supported.
+   */
+  @Setup
+  public void setup() throws GeneralSecurityException {
+    this.key = Aes.generateKey(256);
+    this.iv = Aes.generateIv();
+    this.ivBytes = this.iv.getIV();
+    this.packet = new byte[this.packetSize];
+    Aes.generateBytes(this.packet);
+    this.encryptedPacket = Aes.encrypt(this.packet, this.key);
+    this.packetBuffer = ByteBuffer.allocateDirect(this.packetSize);
+    this.encryptedBuffer = ByteBuffer.allocateDirect(Aes.encryptedSize(this.packetSize));
+  }
+
+  @Benchmark
+  public byte[] newCipherEncrypt() throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance(Aes.ALGORITHM);
+    cipher.init(Cipher.ENCRYPT_MODE, this.key,
+        new GCMParameterSpec(Aes.TAG_LENGTH, this.iv.getIV()));
+    return cipher.doFinal(this.packet);
+  }
+
+  @Benchmark
+  public byte[] cachedCipherEncrypt() throws GeneralSecurityException {
+    // Cached cipher refuses to encrypt twice with same key and IV
+    this.ivBytes[0]++;
+    return Aes.encrypt(this.packet, this.key, new IvParameterSpec(this.ivBytes));
+  }
+
+  @Benchmark
+  public int directBufferEncrypt() throws GeneralSecurityException {
+    this.packetBuffer.clear();
+    this.encryptedBuffer.clear();
+    return Aes.encrypt(this.packetBuffer, this.encryptedBuffer, this.key);
+  }
+
+  @Benchmark
+  public byte[] newCipherDecrypt() throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance(Aes.ALGORITHM);
+    cipher.init(Cipher.DECRYPT_MODE, this.key,
+        new GCMParameterSpec(Aes.TAG_LENGTH, this.encryptedPacket, 0, Aes.IV_SIZE));
+    return cipher.doFinal(this.encryptedPacket, Aes.IV_SIZE,
+        this.encryptedPacket.length - Aes.IV_SIZE);
+  }
+
+  @Benchmark
+  public byte[] cachedCipherDecrypt() throws GeneralSecurityException {
+    return Aes.decrypt(this.encryptedPacket, this.key);
+  }
+}
@@ -0,0 +1,79 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Comparison of {@link CipherSuite}s. To see, how suites work on processors without AES
+ * instructions, add {@code -jvmArgs "-XX:+UnlockDiagnosticVMOptions -XX:-UseAES
+ * -XX:-UseAESIntrinsics"} to JMH options.
+ *
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CipherSuiteBenchmark {
+  @Param({"AES_GCM", "CHACHA20_POLY1305"})
+  public CipherSuite suite;
+
+  @Param({"64", "1024", "16384"})
+  public int packetSize;
+
+  protected ByteBuffer packet;
+  protected ByteBuffer encryptedPacket;
+  // ChaCha20-Poly1305 refuses to reuse nonce of previous packet, so two packets are decrypted
+  protected ByteBuffer[] sealedPackets = new ByteBuffer[2];
+  protected int sealedIndex = 1;
+  protected ByteBuffer openedPacket;
+
+  /**
+   * Creates key and packets.
+   *
+   * @throws GeneralSecurityException Suite is not supported.
+   */
+  @Setup
+  public void setup() throws GeneralSecurityException {
+    Aes.key = Aes.generateKey(256);
+    this.packet = ByteBuffer.allocate(this.packetSize);
+    this.encryptedPacket = ByteBuffer.allocate(Aes.encryptedSize(this.packetSize));
+
+    for (int i = 0; i < this.sealedPackets.length; i++) {
+      this.sealedPackets[i] = ByteBuffer.allocate(Aes.encryptedSize(this.packetSize));
+      this.suite.encrypt(this.packet.duplicate(), this.sealedPackets[i]);
+      this.sealedPackets[i].flip();
+    }
+
+    this.openedPacket = ByteBuffer.allocate(this.packetSize);
+  }
+
+  @Benchmark
+  public int encrypt() throws GeneralSecurityException {
+    this.packet.clear();
+    this.encryptedPacket.clear();
+    return this.suite.encrypt(this.packet, this.encryptedPacket);
+  }
+
+  @Benchmark
+  public int decrypt() throws GeneralSecurityException {
+    this.openedPacket.clear();
+    this.sealedIndex ^= 1;
+    return this.suite.decrypt(this.sealedPackets[this.sealedIndex].duplicate(),
+        this.openedPacket);
+  }
+}
@@ -0,0 +1,109 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link Compression} on one chat message and on history packet with many
+ * messages. {@code compressWithoutDictionary} shows, what preset dictionary costs. Sizes of
+ * compressed packets are printed after each trial.
+ *
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+  private static final String[] TEXTS = {
+      "hello, how are you doing?",
+      "i'm fine, thanks! what about you?",
+      "see you later, good night",
+      "can you send me that file? https://www.example.com/files/report.pdf",
+      "Привет, как дела? Всё хорошо, спасибо",
+      "ok",
+      "I think that's great, of course no problem at all"
+  };
+
+  @Param({"message", "history"})
+  public String payload;
+
+  private byte[] packet;
+  private byte[] compressedPacket;
+  private final Deflater plainDeflater = new Deflater(Compression.LEVEL);
+  private final byte[] output = new byte[1024 * 1024];
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+
+    if (this.payload.equals("message")) {
+      Message message = new Message(1234567, 42, true, TEXTS[3] + " " + TEXTS[0]);
+      ByteBuffer buffer = ByteBuffer.allocate(2 + message.byteSize()).putShort((short) 10);
+      message.writeTo(buffer);
+      this.packet = buffer.array();
+    } else {
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).putShort((short) 7).putInt(0);
+      int count = 500;
+      buffer.putInt(count);
+
+      for (int i = 0; i < count; i++) {
+        Message message = new Message(1000 + i, 40 + random.nextInt(5), random.nextBoolean(),
+            TEXTS[random.nextInt(TEXTS.length)]);
+        message.writeTo(buffer);
+      }
+
+      this.packet = new byte[buffer.position()];
+      buffer.flip();
+      buffer.get(this.packet);
+    }
+
+    this.compressedPacket = Compression.compress(this.packet, 0);
+  }
+
+  @TearDown(Level.Trial)
+  public void printSizes() {
+    this.plainDeflater.reset();
+    this.plainDeflater.setInput(this.packet);
+    this.plainDeflater.finish();
+    int plainSize = this.plainDeflater.deflate(this.output);
+    System.out.printf("%n%s: %d bytes, with dictionary %d bytes, without dictionary %d bytes%n",
+        this.payload, this.packet.length, this.compressedPacket.length, plainSize);
+  }
+
+  @Benchmark
+  public byte[] compress() {
+    return Compression.compress(this.packet, 0);
+  }
+
+  @Benchmark
+  public byte[] decompress() throws DataFormatException {
+    return Compression.decompress(this.compressedPacket, Integer.MAX_VALUE);
+  }
+
+  @Benchmark
+  public int compressWithoutDictionary() {
+    this.plainDeflater.reset();
+    this.plainDeflater.setInput(this.packet);
+    this.plainDeflater.finish();
+    return this.plainDeflater.deflate(this.output);
+  }
+}
@@ -0,0 +1,53 @@
+package com.werryxgames.messaje;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of generating IVs from several threads. {@code newSecureRandom} creates
+ * {@link SecureRandom} for every IV, like {@link Aes} did before it shared one.
+ *
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class IvBenchmark {
+  @Param({"random", "counter"})
+  public String ivMode;
+
+  @Setup
+  public void setup() {
+    Aes.ivMode = this.ivMode;
+  }
+
+  @Benchmark
+  public byte[] newSecureRandom() {
+    byte[] iv = new byte[Aes.IV_SIZE];
+    new SecureRandom().nextBytes(iv);
+    return iv;
+  }
+
+  @Benchmark
+  public byte[] generateIv() {
+    byte[] iv = new byte[Aes.IV_SIZE];
+    Aes.generateIv(iv, 0);
+    return iv;
+  }
+}
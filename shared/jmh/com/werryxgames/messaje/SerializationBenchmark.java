@@ -0,0 +1,130 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of writing history of 500 messages into one frame: {@code toBytes} copies every
+ * message from it's own buffer, {@code writeTo} and {@code writeCompactTo} write straight into
+ * frame. New messages are created in every call, so cached text isn't reused between calls.
+ * {@code readMessages} and {@code readView} compare reading of the same frame with
+ * {@link Message#fromBytes(ByteBuffer)} and {@link MessageView}, that decodes one text.
+ *
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+  private static final int COUNT = 500;
+
+  private final long[] ids = new long[COUNT];
+  private final long[] contactIds = new long[COUNT];
+  private final String[] texts = new String[COUNT];
+  private final ByteBuffer frame = ByteBuffer.allocate(256 * 1024);
+  private ByteBuffer history;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+
+    for (int i = 0; i < COUNT; i++) {
+      this.ids[i] = 100000 - i;
+      this.contactIds[i] = 40 + random.nextInt(5);
+      this.texts[i] = "message number " + i + ", привет, how are you doing?";
+    }
+
+    this.writeTo();
+    this.history = ByteBuffer.wrap(Arrays.copyOf(this.frame.array(), this.frame.position()));
+  }
+
+  private Message message(int index) {
+    return new Message(this.ids[index], this.contactIds[index], (index & 1) != 0,
+        this.texts[index]);
+  }
+
+  @Benchmark
+  public int toBytes() {
+    this.frame.clear();
+    int size = 0;
+    Message[] messages = new Message[COUNT];
+
+    for (int i = 0; i < COUNT; i++) {
+      messages[i] = this.message(i);
+      size += messages[i].byteSize();
+    }
+
+    for (Message message : messages) {
+      this.frame.put(message.toBytes());
+    }
+
+    return size + this.frame.position();
+  }
+
+  @Benchmark
+  public int writeTo() {
+    this.frame.clear();
+    int size = 0;
+    Message[] messages = new Message[COUNT];
+
+    for (int i = 0; i < COUNT; i++) {
+      messages[i] = this.message(i);
+      size += messages[i].byteSize();
+    }
+
+    for (Message message : messages) {
+      message.writeTo(this.frame);
+    }
+
+    return size + this.frame.position();
+  }
+
+  @Benchmark
+  public long readMessages() {
+    this.history.clear();
+    long sum = 0;
+
+    for (int i = 0; i < COUNT; i++) {
+      Message message = new Message().fromBytes(this.history);
+      sum += message.id + message.text.length();
+    }
+
+    return sum;
+  }
+
+  @Benchmark
+  public long readView() {
+    this.history.clear();
+    MessageView view = new MessageView(this.history, COUNT, false);
+    return view.getMaxId() + view.getText(COUNT - 1).length();
+  }
+
+  @Benchmark
+  public int writeCompactTo() {
+    this.frame.clear();
+    long previousId = 0;
+
+    for (int i = 0; i < COUNT; i++) {
+      Message message = this.message(i);
+      message.writeCompactTo(this.frame, previousId);
+      previousId = message.id;
+    }
+
+    return this.frame.position();
+  }
+}
@@ -6,12 +6,14 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -28,6 +30,12 @@ public class Aes {
   public static final int IV_SIZE = 12;
   public static final int TAG_LENGTH = 128;
   protected static SecretKey key = null;
+  // Cipher is not thread-safe, but can be reinitialized, so each thread keeps one
+  protected static final ThreadLocal<Cipher> threadCipher = new ThreadLocal<>();
+  // SecureRandom is thread-safe and seeding it is slow, so it is created once
+  protected static final SecureRandom random = new SecureRandom();
+  protected static String ivMode = null;
+  protected static volatile IvCounter ivCounter = null;
 
   /**
    * SHOULD BE REPLACED WITH SOMETHING MORE SECURE!
@@ -166,20 +174,87 @@ public class Aes {
   }
 
   public static void generateBytes(byte[] arr) {
-    new SecureRandom().nextBytes(arr);
+    Aes.random.nextBytes(arr);
   }
 
   /**
-   * Generates 16 bytes of Initialization Vector (IV).
+   * Returns mode of generating IVs, specified as {@code aes.ivMode} property: {@code "random"}
+   * or {@code "counter"}.
+   *
+   * @return Mode of generating IVs.
+   */
+  public static String getIvMode() {
+    if (Aes.ivMode == null) {
+      Aes.ivMode = Config.get("aes.ivMode", "random");
+    }
+
+    return Aes.ivMode;
+  }
+
+  /**
+   * Generates {@link Aes#IV_SIZE} bytes of Initialization Vector (IV). In {@code "counter"}
+   * mode (see {@link Aes#getIvMode()}) IV is random prefix of this process, followed by counter,
+   * so it's unique without using {@link SecureRandom}.
+   *
+   * @param iv     Array, where IV will be written.
+   * @param offset Offset of IV in array.
+   */
+  public static void generateIv(byte[] iv, int offset) {
+    if (!"counter".equals(Aes.getIvMode())) {
+      ByteBuffer.wrap(iv, offset, Aes.IV_SIZE).putLong(Aes.random.nextLong())
+          .putInt(Aes.random.nextInt());
+      return;
+    }
+
+    IvCounter counter = Aes.ivCounter;
+    int value;
+
+    while (counter == null || (value = counter.value.getAndIncrement()) < 0) {
+      counter = Aes.nextIvCounter(counter);
+    }
+
+    ByteBuffer.wrap(iv, offset, Aes.IV_SIZE).putLong(counter.prefix).putInt(value);
+  }
+
+  /**
+   * Generates {@link Aes#IV_SIZE} bytes of Initialization Vector (IV).
    *
    * @return Generated IV.
    */
   public static IvParameterSpec generateIv() {
     byte[] iv = new byte[Aes.IV_SIZE];
-    Aes.generateBytes(iv);
+    Aes.generateIv(iv, 0);
     return new IvParameterSpec(iv);
   }
 
+  // Counter is exhausted after 2^31 IVs, then new random prefix is used
+  protected static synchronized IvCounter nextIvCounter(IvCounter exhausted) {
+    if (Aes.ivCounter == exhausted) {
+      Aes.ivCounter = new IvCounter(Aes.random.nextLong());
+    }
+
+    return Aes.ivCounter;
+  }
+
+  /**
+   * Returns {@link Cipher} of current thread, creating it on first call. Returned cipher must be
+   * initialized before every use.
+   *
+   * @return Cipher for {@link Aes#ALGORITHM}.
+   * @throws NoSuchAlgorithmException Thrown if AES-GCM is not supported.
+   * @throws NoSuchPaddingException   Thrown if AES-GCM is not supported.
+   */
+  public static Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+    Cipher cipher = Aes.threadCipher.get();
+
+    if (cipher == null) {
+      cipher = Cipher.getInstance(Aes.ALGORITHM);
+      Aes.threadCipher.set(cipher);
+    }
+
+    return cipher;
+  }
+
   /**
    * Encrypts data.
    *
@@ -191,7 +266,7 @@ public class Aes {
   public static byte[] encrypt(byte[] bytes, SecretKey key, IvParameterSpec iv)
       throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
       InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-    Cipher cipher = Cipher.getInstance(Aes.ALGORITHM);
+    Cipher cipher = Aes.getCipher();
     GCMParameterSpec parameterSpec = new GCMParameterSpec(Aes.TAG_LENGTH, iv.getIV());
     cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
     return cipher.doFinal(bytes);
@@ -204,13 +279,74 @@ public class Aes {
   public static byte[] encrypt(byte[] bytes, SecretKey key)
       throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
       NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
-    IvParameterSpec iv = Aes.generateIv();
-    byte[] ivBytes = iv.getIV();
-    byte[] encryptedBytes = Aes.encrypt(bytes, key, iv);
-    ByteBuffer buffer = ByteBuffer.allocate(ivBytes.length + encryptedBytes.length);
-    buffer.put(ivBytes);
-    buffer.put(encryptedBytes);
-    return buffer.array();
+    byte[] encryptedBytes = new byte[Aes.encryptedSize(bytes.length)];
+
+    try {
+      Aes.encrypt(ByteBuffer.wrap(bytes), ByteBuffer.wrap(encryptedBytes), key);
+    } catch (ShortBufferException e) {
+      // Size of array is always enough
+      throw new IllegalStateException(e);
+    }
+
+    return encryptedBytes;
+  }
+
+  /**
+   * Returns size of data, encrypted by {@link Aes#encrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   *
+   * @param size Size of original data.
+   * @return Size of IV, encrypted data and authentication tag.
+   */
+  public static int encryptedSize(int size) {
+    return Aes.IV_SIZE + size + Aes.TAG_LENGTH / 8;
+  }
+
+  /**
+   * Returns size of data, decrypted by {@link Aes#decrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   *
+   * @param encryptedSize Size of encrypted data, including IV and authentication tag.
+   * @return Size of original data.
+   */
+  public static int decryptedSize(int encryptedSize) {
+    return encryptedSize - Aes.IV_SIZE - Aes.TAG_LENGTH / 8;
+  }
+
+  /**
+   * Encrypts remaining bytes of {@code src} and writes IV, encrypted data and authentication tag
+   * to {@code dst} without intermediate arrays. Buffers can be direct. Positions of both buffers
+   * are advanced.
+   *
+   * @param src Data to encrypt.
+   * @param dst Buffer with at least {@link Aes#encryptedSize(int)} remaining bytes.
+   * @param key AES key, used to encrypt data.
+   * @return Number of bytes, written to {@code dst}.
+   * @throws ShortBufferException {@code dst} doesn't have enough space.
+   */
+  public static int encrypt(ByteBuffer src, ByteBuffer dst, SecretKey key)
+      throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
+      NoSuchAlgorithmException, BadPaddingException, InvalidKeyException, ShortBufferException {
+    int size = Aes.encryptedSize(src.remaining());
+
+    if (dst.remaining() < size) {
+      throw new ShortBufferException(
+          "Need " + size + " bytes to encrypt data, only " + dst.remaining() + " available");
+    }
+
+    byte[] iv = new byte[Aes.IV_SIZE];
+    Aes.generateIv(iv, 0);
+    Cipher cipher = Aes.getCipher();
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(Aes.TAG_LENGTH, iv));
+    dst.put(iv);
+    return Aes.IV_SIZE + cipher.doFinal(src, dst);
+  }
+
+  /**
+   * Encrypts data. See {@link Aes#encrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   */
+  public static int encrypt(ByteBuffer src, ByteBuffer dst)
+      throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
+      NoSuchAlgorithmException, BadPaddingException, InvalidKeyException, ShortBufferException {
+    return Aes.encrypt(src, dst, Aes.getKey());
   }
 
   /**
@@ -234,26 +370,106 @@ public class Aes {
   public static byte[] decrypt(byte[] encryptedBytes, SecretKey key, IvParameterSpec iv)
       throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
       InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-    Cipher cipher = Cipher.getInstance(Aes.ALGORITHM);
+    Cipher cipher = Aes.getCipher();
     GCMParameterSpec parameterSpec = new GCMParameterSpec(Aes.TAG_LENGTH, iv.getIV());
     cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
     return cipher.doFinal(encryptedBytes);
   }
 
+  /**
+   * Decrypts data, that is located in part of array and starts with IV.
+   *
+   * @param encryptedBytes Array with data to decrypt.
+   * @param offset         Offset of data in array.
+   * @param length         Length of data, including IV.
+   * @param key            AES key, used to encrypt given data.
+   * @return Original data.
+   */
+  public static byte[] decrypt(byte[] encryptedBytes, int offset, int length, SecretKey key)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+    if (length < Aes.IV_SIZE + Aes.TAG_LENGTH / 8) {
+      throw new BadPaddingException("Encrypted data is too short");
+    }
+
+    Cipher cipher = Aes.getCipher();
+    GCMParameterSpec parameterSpec = new GCMParameterSpec(Aes.TAG_LENGTH, encryptedBytes, offset,
+        Aes.IV_SIZE);
+    cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
+    return cipher.doFinal(encryptedBytes, offset + Aes.IV_SIZE, length - Aes.IV_SIZE);
+  }
+
+  /**
+   * Decrypts remaining bytes of {@code src}, that start with IV, and writes original data to
+   * {@code dst} without intermediate arrays. Buffers can be direct, and {@code dst} can share
+   * memory with {@code src} (to decrypt data in place). Positions of both buffers are advanced.
+   *
+   * @param src Data to decrypt, created by {@link Aes#encrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   * @param dst Buffer with at least {@link Aes#decryptedSize(int)} remaining bytes.
+   * @param key AES key, used to encrypt given data.
+   * @return Number of bytes, written to {@code dst}.
+   * @throws ShortBufferException {@code dst} doesn't have enough space.
+   */
+  public static int decrypt(ByteBuffer src, ByteBuffer dst, SecretKey key)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      InvalidKeyException, IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+    int length = src.remaining();
+
+    if (length < Aes.IV_SIZE + Aes.TAG_LENGTH / 8) {
+      throw new BadPaddingException("Encrypted data is too short");
+    }
+
+    if (dst.remaining() < Aes.decryptedSize(length)) {
+      throw new ShortBufferException("Need " + Aes.decryptedSize(length)
+          + " bytes to decrypt data, only " + dst.remaining() + " available");
+    }
+
+    GCMParameterSpec parameterSpec;
+
+    if (src.hasArray()) {
+      parameterSpec = new GCMParameterSpec(Aes.TAG_LENGTH, src.array(),
+          src.arrayOffset() + src.position(), Aes.IV_SIZE);
+      src.position(src.position() + Aes.IV_SIZE);
+    } else {
+      byte[] iv = new byte[Aes.IV_SIZE];
+      src.get(iv);
+      parameterSpec = new GCMParameterSpec(Aes.TAG_LENGTH, iv);
+    }
+
+    Cipher cipher = Aes.getCipher();
+    cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
+    return cipher.doFinal(src, dst);
+  }
+
+  /**
+   * Decrypts data. See {@link Aes#decrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   */
+  public static int decrypt(ByteBuffer src, ByteBuffer dst)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      InvalidKeyException, IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+    return Aes.decrypt(src, dst, Aes.getKey());
+  }
+
   /**
    * Decrypts data.
-   * {@link Aes#decrypt(byte[], SecretKey, IvParameterSpec)}
+   * {@link Aes#decrypt(byte[], int, int, SecretKey)}
    */
   public static byte[] decrypt(byte[] encryptedBytes, SecretKey key)
       throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
       NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
-    ByteBuffer buffer = ByteBuffer.wrap(encryptedBytes);
-    byte[] ivBytes = new byte[Aes.IV_SIZE];
-    buffer.get(ivBytes);
-    IvParameterSpec iv = new IvParameterSpec(ivBytes);
-    byte[] contentBytes = new byte[buffer.remaining()];
-    buffer.get(contentBytes);
-    return Aes.decrypt(contentBytes, key, iv);
+    return Aes.decrypt(encryptedBytes, 0, encryptedBytes.length, key);
+  }
+
+  /**
+   * Decrypts remaining bytes of heap buffer, for example frame from {@link FrameDecoder}.
+   * {@link Aes#decrypt(byte[], int, int, SecretKey)}
+   */
+  public static byte[] decrypt(ByteBuffer encryptedBuffer)
+      throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
+      NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+    return Aes.decrypt(encryptedBuffer.array(),
+        encryptedBuffer.arrayOffset() + encryptedBuffer.position(), encryptedBuffer.remaining(),
+        Aes.getKey());
   }
 
   /**
@@ -265,4 +481,18 @@ public class Aes {
       NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
     return Aes.decrypt(encryptedBytes, Aes.getKey());
   }
+
+  /**
+   * Random prefix and counter for IVs in {@code "counter"} mode.
+   *
+   * @since 1.0
+   */
+  protected static class IvCounter {
+    public final long prefix;
+    public final AtomicInteger value = new AtomicInteger();
+
+    public IvCounter(long prefix) {
+      this.prefix = prefix;
+    }
+  }
 }
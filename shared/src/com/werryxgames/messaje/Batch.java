@@ -0,0 +1,94 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Several packets in one encrypted frame: {@code [short code][short count]} followed by
+ * {@code [int length][packet]} for every packet. Every packet starts with it's own operation
+ * code and is handled as if it was received in separate frame. Client sends batches with code
+ * {@link Batch#CLIENT_CODE}, server with code {@link Batch#SERVER_CODE}.
+ *
+ * @since 1.0
+ */
+public class Batch {
+  public static final short CLIENT_CODE = 10;
+  public static final short SERVER_CODE = 19;
+  /**
+   * Bit in features of hello and it's reply, that tells, that side understands batches.
+   */
+  public static final byte FEATURE = 2;
+  public static final int HEADER_SIZE = 2 + 2;
+  public static final int ENTRY_HEADER_SIZE = 4;
+  /**
+   * Maximum number of packets in one batch.
+   */
+  public static final int MAX_PACKETS = Short.MAX_VALUE;
+  /**
+   * Sender stops adding packets to batch, when it's bigger than this size.
+   */
+  public static final int MAX_SIZE = 64 * 1024;
+
+  /**
+   * Creates batch from packets.
+   *
+   * @param code    Operation code of batch.
+   * @param packets Packets, at most {@link Batch#MAX_PACKETS}.
+   * @return Batch.
+   */
+  public static byte[] pack(short code, Collection<byte[]> packets) {
+    if (packets.size() > Batch.MAX_PACKETS) {
+      throw new IllegalArgumentException("Too many packets in batch: " + packets.size());
+    }
+
+    int size = Batch.HEADER_SIZE;
+
+    for (byte[] packet : packets) {
+      size += Batch.ENTRY_HEADER_SIZE + packet.length;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size).putShort(code).putShort((short) packets.size());
+
+    for (byte[] packet : packets) {
+      buffer.putInt(packet.length).put(packet);
+    }
+
+    return buffer.array();
+  }
+
+  /**
+   * Splits batch into packets.
+   *
+   * @param buffer Batch without operation code.
+   * @return Packets, every packet starts with operation code.
+   * @throws IllegalArgumentException Batch is damaged.
+   */
+  public static ArrayList<byte[]> unpack(ByteBuffer buffer) {
+    if (buffer.remaining() < 2) {
+      throw new IllegalArgumentException("Batch has no size");
+    }
+
+    int count = buffer.getShort() & 0xFFFF;
+    ArrayList<byte[]> packets = new ArrayList<>(Math.min(count, 64));
+
+    for (int i = 0; i < count; i++) {
+      if (buffer.remaining() < Batch.ENTRY_HEADER_SIZE) {
+        throw new IllegalArgumentException("Batch is shorter than it's header");
+      }
+
+      int length = buffer.getInt();
+
+      if (length < 2 || length > buffer.remaining()) {
+        throw new IllegalArgumentException("Invalid length of packet in batch: " + length);
+      }
+
+      //noinspection ObjectAllocationInLoop
+      byte[] packet = new byte[length];
+      buffer.get(packet);
+      packets.add(packet);
+    }
+
+    return packets;
+  }
+}
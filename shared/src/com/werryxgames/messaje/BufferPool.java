@@ -0,0 +1,94 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pool of heap {@link ByteBuffer}s. Buffers are grouped by capacity, that is power of two, so
+ * buffer for packet of any size can be reused for another packet of similar size.
+ * Safe to use from any thread.
+ *
+ * @since 1.0
+ */
+public class BufferPool {
+  public static final int MIN_POOLED_CAPACITY = 64;
+  public static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+  public static final BufferPool DEFAULT = new BufferPool(32);
+
+  protected int maxBuffersPerCapacity;
+  protected ConcurrentLinkedQueue<ByteBuffer>[] buffers;
+  protected AtomicIntegerArray pooledCounts;
+
+  /**
+   * Constructor for {@link BufferPool}.
+   *
+   * @param maxBuffersPerCapacity Maximum number of kept free buffers with same capacity.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public BufferPool(int maxBuffersPerCapacity) {
+    this.maxBuffersPerCapacity = maxBuffersPerCapacity;
+    int capacities = BufferPool.capacityIndex(BufferPool.MAX_POOLED_CAPACITY) + 1;
+    this.buffers = new ConcurrentLinkedQueue[capacities];
+    this.pooledCounts = new AtomicIntegerArray(capacities);
+
+    for (int i = 0; i < capacities; i++) {
+      //noinspection ObjectAllocationInLoop
+      this.buffers[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  protected static int capacityIndex(int size) {
+    int capacity = Math.max(size, BufferPool.MIN_POOLED_CAPACITY);
+    int bits = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    return bits - Integer.numberOfTrailingZeros(BufferPool.MIN_POOLED_CAPACITY);
+  }
+
+  /**
+   * Takes buffer from pool, or allocates new one.
+   *
+   * @param size Required size of buffer.
+   * @return Buffer with position 0 and limit {@code size}. It's capacity can be larger.
+   */
+  public ByteBuffer acquire(int size) {
+    if (size > BufferPool.MAX_POOLED_CAPACITY) {
+      return ByteBuffer.allocate(size);
+    }
+
+    int index = BufferPool.capacityIndex(size);
+    ByteBuffer buffer = this.buffers[index].poll();
+
+    if (buffer == null) {
+      buffer = ByteBuffer.allocate(BufferPool.MIN_POOLED_CAPACITY << index);
+    } else {
+      this.pooledCounts.decrementAndGet(index);
+    }
+
+    buffer.clear().limit(size);
+    return buffer;
+  }
+
+  /**
+   * Returns buffer, taken with {@link BufferPool#acquire(int)}, to pool. Buffer must not be used
+   * after that.
+   *
+   * @param buffer Buffer to return.
+   */
+  public void release(ByteBuffer buffer) {
+    int capacity = buffer.capacity();
+
+    if (capacity > BufferPool.MAX_POOLED_CAPACITY || Integer.bitCount(capacity) != 1
+        || capacity < BufferPool.MIN_POOLED_CAPACITY || buffer.isDirect()) {
+      return;
+    }
+
+    int index = BufferPool.capacityIndex(capacity);
+
+    if (this.pooledCounts.incrementAndGet(index) > this.maxBuffersPerCapacity) {
+      this.pooledCounts.decrementAndGet(index);
+      return;
+    }
+
+    this.buffers[index].add(buffer);
+  }
+}
@@ -8,8 +8,21 @@ import java.nio.ByteBuffer;
  * @since 1.0
  */
 public interface ByteSerializable {
+  /**
+   * Returns size of serialized object. Encoded strings are cached, so calling it before
+   * {@link ByteSerializable#writeTo(ByteBuffer)} doesn't encode them twice.
+   *
+   * @return Number of bytes, that {@link ByteSerializable#writeTo(ByteBuffer)} writes.
+   */
   int byteSize();
 
+  /**
+   * Writes object at current position of buffer without allocating intermediate buffer.
+   *
+   * @param buffer Buffer with at least {@link ByteSerializable#byteSize()} remaining bytes.
+   */
+  void writeTo(ByteBuffer buffer);
+
   ByteBuffer toByteBuffer();
 
   byte[] toBytes();
@@ -0,0 +1,301 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Locale;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AEAD algorithm, that encrypts packets of one connection. Client and server start with
+ * {@link CipherSuite#AES_GCM} and can switch to another suite during handshake. Every suite uses
+ * {@link Aes#IV_SIZE} bytes of nonce and {@link Aes#TAG_LENGTH} bits of authentication tag, so
+ * encrypted packets have same layout: nonce, encrypted data and tag.
+ *
+ * @since 1.0
+ */
+public enum CipherSuite {
+  /**
+   * AES-GCM with key from {@link Aes#getKey()}. Fast on processors with AES instructions.
+   */
+  AES_GCM((byte) 0, "aes-gcm") {
+    @Override
+    public Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+      return Aes.getCipher();
+    }
+
+    @Override
+    protected SecretKey createKey() {
+      return Aes.getKey();
+    }
+
+    @Override
+    protected AlgorithmParameterSpec getParameters(byte[] nonce, int offset) {
+      return new GCMParameterSpec(Aes.TAG_LENGTH, nonce, offset, Aes.IV_SIZE);
+    }
+  },
+  /**
+   * ChaCha20-Poly1305 with key, derived from {@link Aes#getKey()}. Faster than AES-GCM on
+   * processors without AES instructions, like many low-end phones.
+   */
+  CHACHA20_POLY1305((byte) 1, "chacha20-poly1305") {
+    // Name in JDK and name in Android
+    private final String[] algorithms = {"ChaCha20-Poly1305", "ChaCha20/Poly1305/NoPadding"};
+    private final ThreadLocal<Cipher> threadCipher = new ThreadLocal<>();
+
+    @Override
+    public Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+      Cipher cipher = this.threadCipher.get();
+
+      if (cipher != null) {
+        return cipher;
+      }
+
+      for (int i = 0; i < this.algorithms.length - 1; i++) {
+        try {
+          cipher = Cipher.getInstance(this.algorithms[i]);
+          break;
+        } catch (NoSuchAlgorithmException ignored) {
+          // Try next name
+        }
+      }
+
+      if (cipher == null) {
+        cipher = Cipher.getInstance(this.algorithms[this.algorithms.length - 1]);
+      }
+
+      this.threadCipher.set(cipher);
+      return cipher;
+    }
+
+    @Override
+    protected SecretKey createKey() throws NoSuchAlgorithmException, InvalidKeyException {
+      // Same key isn't used with two algorithms, separate key is derived from AES key
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(Aes.getKey().getEncoded(), "HmacSHA256"));
+      return new SecretKeySpec(
+          mac.doFinal("Messaje ChaCha20-Poly1305".getBytes(StandardCharsets.UTF_8)), "ChaCha20");
+    }
+
+    @Override
+    protected AlgorithmParameterSpec getParameters(byte[] nonce, int offset) {
+      return new IvParameterSpec(nonce, offset, Aes.IV_SIZE);
+    }
+  };
+
+  public final byte id;
+  public final String configName;
+  protected volatile SecretKey key = null;
+
+  CipherSuite(byte id, String configName) {
+    this.id = id;
+    this.configName = configName;
+  }
+
+  /**
+   * Returns suite by it's identifier, that is sent during handshake.
+   *
+   * @param id Identifier of suite.
+   * @return Suite, or {@code null} if there is no suite with such identifier.
+   */
+  public static CipherSuite fromId(byte id) {
+    for (CipherSuite suite : CipherSuite.values()) {
+      if (suite.id == id) {
+        return suite;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Parses comma-separated list of suite names, like {@code "aes-gcm,chacha20-poly1305"}.
+   * Unknown names and suites, that are not available on this platform, are skipped.
+   *
+   * @param names Comma-separated names of suites, in order of preference.
+   * @return Available suites, in same order.
+   */
+  public static CipherSuite[] parseList(String names) {
+    ArrayList<CipherSuite> suites = new ArrayList<>(CipherSuite.values().length);
+
+    for (String name : names.split(",")) {
+      String trimmedName = name.trim().toLowerCase(Locale.ENGLISH);
+
+      for (CipherSuite suite : CipherSuite.values()) {
+        if (suite.configName.equals(trimmedName) && suite.isAvailable()
+            && !suites.contains(suite)) {
+          suites.add(suite);
+        }
+      }
+    }
+
+    return suites.toArray(new CipherSuite[0]);
+  }
+
+  /**
+   * Returns {@link Cipher} of current thread, creating it on first call. Returned cipher must be
+   * initialized before every use.
+   *
+   * @return Cipher of this suite.
+   * @throws NoSuchAlgorithmException Thrown if suite is not supported.
+   * @throws NoSuchPaddingException   Thrown if suite is not supported.
+   */
+  public abstract Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException;
+
+  protected abstract SecretKey createKey() throws NoSuchAlgorithmException, InvalidKeyException;
+
+  protected abstract AlgorithmParameterSpec getParameters(byte[] nonce, int offset);
+
+  /**
+   * Returns key of this suite.
+   *
+   * @return Key.
+   * @throws NoSuchAlgorithmException Thrown if key can't be derived.
+   * @throws InvalidKeyException      Thrown if key can't be derived.
+   */
+  public SecretKey getKey() throws NoSuchAlgorithmException, InvalidKeyException {
+    if (this.key == null) {
+      this.key = this.createKey();
+    }
+
+    return this.key;
+  }
+
+  /**
+   * Checks, that suite is supported by this platform.
+   *
+   * @return {@code true} if suite can be used.
+   */
+  public boolean isAvailable() {
+    try {
+      this.getCipher();
+      return true;
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Encrypts remaining bytes of {@code src} and writes nonce, encrypted data and authentication
+   * tag to {@code dst}. See {@link Aes#encrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   *
+   * @param src Data to encrypt.
+   * @param dst Buffer with at least {@link Aes#encryptedSize(int)} remaining bytes.
+   * @return Number of bytes, written to {@code dst}.
+   */
+  public int encrypt(ByteBuffer src, ByteBuffer dst)
+      throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
+      NoSuchAlgorithmException, BadPaddingException, InvalidKeyException, ShortBufferException {
+    int size = Aes.encryptedSize(src.remaining());
+
+    if (dst.remaining() < size) {
+      throw new ShortBufferException(
+          "Need " + size + " bytes to encrypt data, only " + dst.remaining() + " available");
+    }
+
+    byte[] nonce = new byte[Aes.IV_SIZE];
+    Aes.generateIv(nonce, 0);
+    Cipher cipher = this.getCipher();
+    cipher.init(Cipher.ENCRYPT_MODE, this.getKey(), this.getParameters(nonce, 0));
+    dst.put(nonce);
+    return Aes.IV_SIZE + cipher.doFinal(src, dst);
+  }
+
+  /**
+   * Encrypts data. See {@link CipherSuite#encrypt(ByteBuffer, ByteBuffer)}.
+   *
+   * @param bytes Data to encrypt.
+   * @return Nonce, encrypted data and authentication tag.
+   */
+  public byte[] encrypt(byte[] bytes)
+      throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException,
+      NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+    byte[] encryptedBytes = new byte[Aes.encryptedSize(bytes.length)];
+
+    try {
+      this.encrypt(ByteBuffer.wrap(bytes), ByteBuffer.wrap(encryptedBytes));
+    } catch (ShortBufferException e) {
+      // Size of array is always enough
+      throw new IllegalStateException(e);
+    }
+
+    return encryptedBytes;
+  }
+
+  /**
+   * Decrypts remaining bytes of {@code src}, that start with nonce, and writes original data to
+   * {@code dst}. See {@link Aes#decrypt(ByteBuffer, ByteBuffer, SecretKey)}.
+   *
+   * @param src Data to decrypt.
+   * @param dst Buffer with at least {@link Aes#decryptedSize(int)} remaining bytes.
+   * @return Number of bytes, written to {@code dst}.
+   */
+  public int decrypt(ByteBuffer src, ByteBuffer dst)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      InvalidKeyException, IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+    int length = src.remaining();
+
+    if (length < Aes.IV_SIZE + Aes.TAG_LENGTH / 8) {
+      throw new BadPaddingException("Encrypted data is too short");
+    }
+
+    if (dst.remaining() < Aes.decryptedSize(length)) {
+      throw new ShortBufferException("Need " + Aes.decryptedSize(length)
+          + " bytes to decrypt data, only " + dst.remaining() + " available");
+    }
+
+    AlgorithmParameterSpec parameters;
+
+    if (src.hasArray()) {
+      parameters = this.getParameters(src.array(), src.arrayOffset() + src.position());
+      src.position(src.position() + Aes.IV_SIZE);
+    } else {
+      byte[] nonce = new byte[Aes.IV_SIZE];
+      src.get(nonce);
+      parameters = this.getParameters(nonce, 0);
+    }
+
+    Cipher cipher = this.getCipher();
+    cipher.init(Cipher.DECRYPT_MODE, this.getKey(), parameters);
+    return cipher.doFinal(src, dst);
+  }
+
+  /**
+   * Decrypts remaining bytes of buffer, for example frame from {@link FrameDecoder}.
+   * See {@link CipherSuite#decrypt(ByteBuffer, ByteBuffer)}.
+   *
+   * @param encryptedBuffer Data to decrypt.
+   * @return Original data.
+   */
+  public byte[] decrypt(ByteBuffer encryptedBuffer)
+      throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+    if (encryptedBuffer.remaining() < Aes.IV_SIZE + Aes.TAG_LENGTH / 8) {
+      throw new BadPaddingException("Encrypted data is too short");
+    }
+
+    byte[] bytes = new byte[Aes.decryptedSize(encryptedBuffer.remaining())];
+
+    try {
+      this.decrypt(encryptedBuffer, ByteBuffer.wrap(bytes));
+    } catch (ShortBufferException e) {
+      // Size of array is always enough
+      throw new IllegalStateException(e);
+    }
+
+    return bytes;
+  }
+}
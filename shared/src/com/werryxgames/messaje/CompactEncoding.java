@@ -0,0 +1,114 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact encoding of {@link Message} and {@link User}, that is enabled during handshake. Numbers
+ * are written as varints: 7 bits in every byte, highest bit is set, if more bytes follow, so
+ * small identifiers take 1-3 bytes instead of 8.
+ *
+ * <p>User is {@code [varint id][varint nameLength][name]}. Message is
+ * {@code [varint idDelta][varint contactId << 1 | sentByMe][varint textLength][text]}, where
+ * {@code idDelta} is zigzag-encoded difference from identifier of previous message in the same
+ * frame (or from {@code 0} for first message), so sorted history takes 1 byte per identifier.
+ *
+ * @since 1.0
+ */
+public class CompactEncoding {
+  /**
+   * Bit in features of hello and it's reply, that enables compact encoding.
+   */
+  public static final byte FEATURE = 4;
+
+  /**
+   * Writes unsigned varint.
+   *
+   * @param buffer Buffer to write into.
+   * @param value  Value, negative values take 10 bytes.
+   */
+  public static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Reads unsigned varint.
+   *
+   * @param buffer Buffer to read from.
+   * @return Read value.
+   * @throws IllegalArgumentException Varint is longer than 10 bytes.
+   */
+  public static long getVarLong(ByteBuffer buffer) {
+    long value = 0;
+
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+
+      if (b >= 0) {
+        return value;
+      }
+    }
+
+    throw new IllegalArgumentException("Varint is too long");
+  }
+
+  /**
+   * Reads unsigned varint, that must fit into {@code int}.
+   *
+   * @param buffer Buffer to read from.
+   * @return Read value.
+   * @throws IllegalArgumentException Value doesn't fit into {@code int}.
+   */
+  public static int getVarInt(ByteBuffer buffer) {
+    long value = CompactEncoding.getVarLong(buffer);
+
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Varint is out of range: " + value);
+    }
+
+    return (int) value;
+  }
+
+  /**
+   * Calculates size of varint.
+   *
+   * @param value Value to write.
+   * @return Number of bytes, that {@link CompactEncoding#putVarLong(ByteBuffer, long)} writes.
+   */
+  public static int varLongSize(long value) {
+    int size = 1;
+
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+
+    return size;
+  }
+
+  /**
+   * Maps signed value to unsigned, so values near zero take few bytes: 0, -1, 1, -2 become 0, 1,
+   * 2, 3.
+   *
+   * @param value Signed value.
+   * @return Unsigned value.
+   */
+  public static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Restores value, encoded by {@link CompactEncoding#zigZag(long)}.
+   *
+   * @param value Unsigned value.
+   * @return Signed value.
+   */
+  public static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
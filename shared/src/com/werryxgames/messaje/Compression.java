@@ -0,0 +1,227 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of packets before encryption, that is enabled during handshake. Encrypted data
+ * can't be compressed, so packet is compressed before {@link CipherSuite#encrypt(byte[])} and
+ * decompressed after {@link CipherSuite#decrypt(ByteBuffer)}. Packets are compressed
+ * with Deflate and preset dictionary of common chat text, so even short messages become smaller.
+ *
+ * <p>Packet starts with one byte: {@link Compression#STORED} is followed by original packet,
+ * {@link Compression#DEFLATED} is followed by {@code int} size of original packet and compressed
+ * packet.
+ *
+ * @since 1.0
+ */
+public class Compression {
+  public static final byte STORED = 0;
+  public static final byte DEFLATED = 1;
+  /**
+   * Bit in features of hello and it's reply, that enables compression.
+   */
+  public static final byte FEATURE = 1;
+  public static final int HEADER_SIZE = 1 + 4;
+  public static final int LEVEL = Config.get("compression.level", Deflater.DEFAULT_COMPRESSION);
+  public static final int THRESHOLD = Config.get("compression.threshold", 128);
+  /**
+   * Preset dictionary. Deflate finds matches in the end of dictionary faster, so the most common
+   * strings are placed last.
+   */
+  public static final byte[] DICTIONARY = ("<unnamed>https://www.http://.com.org.ru.png.jpg.gif"
+      + ".pdf.txt.zip**__~~``` ```java ```python ```kotlin ```json ```\n"
+      + "thanks thank you please sorry welcome congratulations happy birthday good morning "
+      + "good night good evening see you later talk to you later what's up how are you doing "
+      + "i'm fine i don't know i think that's great that's right of course no problem "
+      + "okay ok yes no maybe why what when where who how because but and or the a an to of in "
+      + "on at for with from about this that it is are was were be have has had do does did "
+      + "will would can could should message messages send sent received online offline "
+      // Russian words and phrases, escaped, so dictionary doesn't depend on source encoding
+      + "\u0441\u043f\u0430\u0441\u0438\u0431\u043e "
+      + "\u043f\u043e\u0436\u0430\u043b\u0443\u0439\u0441\u0442\u0430 "
+      + "\u043f\u0440\u0438\u0432\u0435\u0442 \u043f\u043e\u043a\u0430 "
+      + "\u0434\u043e\u0431\u0440\u043e\u0435 \u0443\u0442\u0440\u043e "
+      + "\u0434\u043e\u0431\u0440\u044b\u0439 \u0432\u0435\u0447\u0435\u0440 "
+      + "\u0441\u043f\u043e\u043a\u043e\u0439\u043d\u043e\u0439 \u043d\u043e\u0447\u0438 "
+      + "\u043a\u0430\u043a \u0434\u0435\u043b\u0430 \u0445\u043e\u0440\u043e\u0448\u043e "
+      + "\u043d\u043e\u0440\u043c\u0430\u043b\u044c\u043d\u043e "
+      + "\u043e\u0442\u043b\u0438\u0447\u043d\u043e \u0434\u0430 \u043d\u0435\u0442 "
+      + "\u043c\u043e\u0436\u0435\u0442 \u0431\u044b\u0442\u044c "
+      + "\u043f\u043e\u0447\u0435\u043c\u0443 \u0447\u0442\u043e \u043a\u043e\u0433\u0434\u0430 "
+      + "\u0433\u0434\u0435 \u043a\u0442\u043e \u043a\u0430\u043a "
+      + "\u043f\u043e\u0442\u043e\u043c\u0443 \u0447\u0442\u043e \u043d\u043e \u0438 "
+      + "\u0438\u043b\u0438 \u044d\u0442\u043e \u0447\u0442\u043e-\u0442\u043e "
+      + "\u0441\u043e\u043e\u0431\u0449\u0435\u043d\u0438\u0435 "
+      + "\u0441\u043e\u043e\u0431\u0449\u0435\u043d\u0438\u044f "
+      + "hello hi hey bye lol ok yes no").getBytes(StandardCharsets.UTF_8);
+
+  protected static final ThreadLocal<Deflater> threadDeflater = new ThreadLocal<>();
+  protected static final ThreadLocal<Inflater> threadInflater = new ThreadLocal<>();
+
+  /**
+   * Returns {@link Deflater} of current thread, creating it on first call.
+   *
+   * @return Deflater with {@link Compression#LEVEL}.
+   */
+  public static Deflater getDeflater() {
+    Deflater deflater = Compression.threadDeflater.get();
+
+    if (deflater == null) {
+      deflater = new Deflater(Compression.LEVEL);
+      Compression.threadDeflater.set(deflater);
+    }
+
+    return deflater;
+  }
+
+  /**
+   * Returns {@link Inflater} of current thread, creating it on first call.
+   *
+   * @return Inflater.
+   */
+  public static Inflater getInflater() {
+    Inflater inflater = Compression.threadInflater.get();
+
+    if (inflater == null) {
+      inflater = new Inflater();
+      Compression.threadInflater.set(inflater);
+    }
+
+    return inflater;
+  }
+
+  /**
+   * Compresses packet, if it's not shorter than {@link Compression#THRESHOLD} and compressed
+   * packet is smaller than original.
+   *
+   * @param packet Original packet.
+   * @return Packet with header.
+   */
+  public static byte[] compress(byte[] packet) {
+    return Compression.compress(packet, Compression.THRESHOLD);
+  }
+
+  /**
+   * Compresses packet, if it's not shorter than {@code threshold} and compressed packet is
+   * smaller than original.
+   *
+   * @param packet    Original packet.
+   * @param threshold Minimal size of packet, that is compressed.
+   * @return Packet with header.
+   */
+  public static byte[] compress(byte[] packet, int threshold) {
+    return Compression.compress(packet, 0, packet.length, threshold);
+  }
+
+  /**
+   * Compresses remaining bytes of buffer without copying them, see
+   * {@link Compression#compress(byte[])}. Position of buffer isn't changed.
+   *
+   * @param buffer Buffer with array, original packet is between position and limit.
+   * @return Packet with header.
+   */
+  public static byte[] compress(ByteBuffer buffer) {
+    return Compression.compress(buffer.array(), buffer.arrayOffset() + buffer.position(),
+        buffer.remaining(), Compression.THRESHOLD);
+  }
+
+  /**
+   * Compresses part of array, see {@link Compression#compress(byte[], int)}.
+   *
+   * @param packet    Array with original packet.
+   * @param offset    Index of first byte of packet.
+   * @param length    Length of packet.
+   * @param threshold Minimal size of packet, that is compressed.
+   * @return Packet with header.
+   */
+  public static byte[] compress(byte[] packet, int offset, int length, int threshold) {
+    if (length >= threshold) {
+      byte[] result = new byte[Compression.HEADER_SIZE + length];
+      Deflater deflater = Compression.getDeflater();
+      deflater.reset();
+      deflater.setDictionary(Compression.DICTIONARY);
+      deflater.setInput(packet, offset, length);
+      deflater.finish();
+      int size = Compression.HEADER_SIZE;
+
+      while (!deflater.finished() && size < result.length) {
+        size += deflater.deflate(result, size, result.length - size);
+      }
+
+      // Data, that doesn't become smaller, is sent as is
+      if (deflater.finished() && size < result.length) {
+        result[0] = Compression.DEFLATED;
+        result[1] = (byte) (length >>> 24);
+        result[2] = (byte) (length >>> 16);
+        result[3] = (byte) (length >>> 8);
+        result[4] = (byte) length;
+        return Arrays.copyOf(result, size);
+      }
+    }
+
+    byte[] result = new byte[1 + length];
+    result[0] = Compression.STORED;
+    System.arraycopy(packet, offset, result, 1, length);
+    return result;
+  }
+
+  /**
+   * Restores packet, created by {@link Compression#compress(byte[], int)}.
+   *
+   * @param packet  Packet with header.
+   * @param maxSize Maximum size of original packet, bigger packets are rejected.
+   * @return Original packet.
+   * @throws DataFormatException Packet is damaged or too big.
+   */
+  public static byte[] decompress(byte[] packet, int maxSize) throws DataFormatException {
+    if (packet.length < 1) {
+      throw new DataFormatException("Packet has no compression header");
+    }
+
+    if (packet[0] == Compression.STORED) {
+      return Arrays.copyOfRange(packet, 1, packet.length);
+    }
+
+    if (packet[0] != Compression.DEFLATED || packet.length < Compression.HEADER_SIZE) {
+      throw new DataFormatException("Unknown compression header: " + packet[0]);
+    }
+
+    int size = ((packet[1] & 0xFF) << 24) | ((packet[2] & 0xFF) << 16)
+        | ((packet[3] & 0xFF) << 8) | (packet[4] & 0xFF);
+
+    if (size < 0 || size > maxSize) {
+      throw new DataFormatException("Invalid size of decompressed packet: " + size);
+    }
+
+    byte[] result = new byte[size];
+    Inflater inflater = Compression.getInflater();
+    inflater.reset();
+    inflater.setInput(packet, Compression.HEADER_SIZE, packet.length - Compression.HEADER_SIZE);
+    int inflatedSize = 0;
+
+    while (inflatedSize < size) {
+      int read = inflater.inflate(result, inflatedSize, size - inflatedSize);
+
+      if (read == 0) {
+        if (inflater.needsDictionary()) {
+          inflater.setDictionary(Compression.DICTIONARY);
+        } else if (inflater.finished() || inflater.needsInput()) {
+          break;
+        }
+      }
+
+      inflatedSize += read;
+    }
+
+    if (inflatedSize != size) {
+      throw new DataFormatException("Decompressed packet has wrong size");
+    }
+
+    return result;
+  }
+}
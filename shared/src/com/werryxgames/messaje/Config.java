@@ -1,13 +1,20 @@
 package com.werryxgames.messaje;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.crypto.BadPaddingException;
@@ -15,20 +22,31 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
 /**
- * Class for getting and setting configuration in *.properties file.
+ * Class for getting configuration from encrypted *.properties file. Configuration is kept as
+ * {@link ConfigSnapshot}, that is replaced, when file is changed and {@link Config#reload()} is
+ * called.
+ *
+ * <p>File is searched at path from {@code messaje.config} system property, then in working
+ * directory, then in archive. Only file on disk can be checked for changes.
  *
  * @since 1.0
  */
 public class Config {
 
   public static final String DEFAULT_PROPERTIES_PATH = "config.properties.enc";
-  protected static Properties configProperties = null;
+  public static final String PATH_PROPERTY = "messaje.config";
+  protected static final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+  protected static final CopyOnWriteArrayList<ConfigListener> listeners =
+      new CopyOnWriteArrayList<>();
+  // File on disk, that properties were loaded from, null if they were loaded from archive
+  protected static File propertiesFile = null;
+  protected static long propertiesModifiedTime = 0;
 
   private static void loadProperties(InputStream inputStream)
       throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException,
       IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException,
       InvalidKeyException, IllegalArgumentException {
-    Config.configProperties = new Properties();
+    Config.snapshot.set(ConfigSnapshot.EMPTY);
 
     if (inputStream == null) {
       throw new IllegalArgumentException("inputStream == null");
@@ -46,8 +64,80 @@ public class Config {
       }
     }
 
+    Config.snapshot.set(Config.parse(fileBytes));
+  }
+
+  private static ConfigSnapshot parse(byte[] fileBytes)
+      throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException,
+      IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException,
+      InvalidKeyException {
     String properties = Aes.decryptProperties(fileBytes);
-    Config.configProperties.load(new StringReader(properties));
+    Properties configProperties = new Properties();
+    configProperties.load(new StringReader(properties));
+    return new ConfigSnapshot(configProperties);
+  }
+
+  /**
+   * Finds file on disk, that properties are loaded from, so {@link Config#reload()} can check it
+   * for changes.
+   *
+   * @param file Path to resource.
+   * @return File from {@code messaje.config} system property, file in working directory or
+   *     resource, if it's a regular file, otherwise {@code null}.
+   */
+  private static File findPropertiesFile(String file) {
+    String path = System.getProperty(Config.PATH_PROPERTY);
+
+    if (path != null && !path.isEmpty()) {
+      return new File(path);
+    }
+
+    File workingDirectoryFile = new File(file);
+
+    if (workingDirectoryFile.isFile()) {
+      return workingDirectoryFile;
+    }
+
+    URL url = Config.class.getClassLoader().getResource(file);
+
+    if (url == null || !"file".equals(url.getProtocol())) {
+      return null;
+    }
+
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      // Resource is not a regular file, so it can't change
+      return null;
+    }
+  }
+
+  /**
+   * Opens file on disk, found by {@link Config#findPropertiesFile(String)}, or resource in
+   * archive, if there is no such file.
+   *
+   * @param file Path to resource.
+   * @return Stream of file, or {@code null} if file is not created yet or resource is not found.
+   * @throws IOException File can't be opened.
+   */
+  private static InputStream openProperties(String file) throws IOException {
+    Config.propertiesFile = Config.findPropertiesFile(file);
+
+    if (Config.propertiesFile == null) {
+      return Config.class.getClassLoader().getResourceAsStream(file);
+    }
+
+    // Missing file is still remembered, so it's loaded by reload(), when it's created
+    return Config.propertiesFile.isFile() ? new FileInputStream(Config.propertiesFile) : null;
+  }
+
+  /**
+   * Returns file on disk, that is checked for changes by {@link Config#reload()}.
+   *
+   * @return File, or {@code null} if properties were loaded from archive and can't change.
+   */
+  public static File getPropertiesFile() {
+    return Config.propertiesFile;
   }
 
   /**
@@ -56,10 +146,11 @@ public class Config {
    * @param file Path to file.
    */
   public static void loadProperties(String file) {
-    try (InputStream inputStream = Config.class.getClassLoader()
-        .getResourceAsStream(file)) {
+    try (InputStream inputStream = Config.openProperties(file)) {
+      long modifiedTime = Config.propertiesFile == null ? 0 : Config.propertiesFile.lastModified();
       assert inputStream != null;
       Config.loadProperties(inputStream);
+      Config.propertiesModifiedTime = modifiedTime;
     } catch (IOException | NullPointerException | InvalidAlgorithmParameterException
              | NoSuchPaddingException | IllegalBlockSizeException | NoSuchAlgorithmException
              | BadPaddingException | InvalidKeyException | IllegalArgumentException e) {
@@ -74,10 +165,11 @@ public class Config {
    * @param logger Logger to log errors.
    */
   public static void loadProperties(String file, Logger logger) {
-    try (ByteArrayInputStream inputStream = (ByteArrayInputStream) Config.class.getClassLoader()
-        .getResourceAsStream(file)) {
+    try (InputStream inputStream = Config.openProperties(file)) {
+      long modifiedTime = Config.propertiesFile == null ? 0 : Config.propertiesFile.lastModified();
       assert inputStream != null;
       Config.loadProperties(inputStream);
+      Config.propertiesModifiedTime = modifiedTime;
     } catch (IOException | NullPointerException | InvalidAlgorithmParameterException
              | NoSuchPaddingException | IllegalBlockSizeException | NoSuchAlgorithmException
              | BadPaddingException | InvalidKeyException e) {
@@ -85,6 +177,74 @@ public class Config {
     }
   }
 
+  /**
+   * Loads properties file again, if it was changed on disk since last successful load, and
+   * notifies listeners. Does nothing, if properties were loaded from archive. File, that can't be
+   * loaded, is tried again on next call, previous configuration is kept until then.
+   *
+   * @return {@code true} if new configuration is loaded.
+   * @throws IOException              File can't be read.
+   * @throws GeneralSecurityException File can't be decrypted.
+   */
+  public static synchronized boolean reload() throws IOException, GeneralSecurityException {
+    File file = Config.propertiesFile;
+
+    if (file == null) {
+      return false;
+    }
+
+    long modifiedTime = file.lastModified();
+
+    if (modifiedTime == Config.propertiesModifiedTime) {
+      return false;
+    }
+
+    ConfigSnapshot current = Config.parse(Files.readAllBytes(file.toPath()));
+    ConfigSnapshot previous = Config.snapshot.getAndSet(current);
+    Config.propertiesModifiedTime = modifiedTime;
+
+    for (ConfigListener listener : Config.listeners) {
+      listener.onConfigChanged(previous == null ? ConfigSnapshot.EMPTY : previous, current);
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds listener, that is called after every {@link Config#reload()}.
+   *
+   * @param listener Listener of changes.
+   */
+  public static void addListener(ConfigListener listener) {
+    Config.listeners.add(listener);
+  }
+
+  /**
+   * Removes listener, added with {@link Config#addListener(ConfigListener)}.
+   *
+   * @param listener Listener of changes.
+   */
+  public static void removeListener(ConfigListener listener) {
+    Config.listeners.remove(listener);
+  }
+
+  /**
+   * Returns current configuration, loading it, if not loaded yet. Returned snapshot never
+   * changes, so values, read from it, are consistent with each other.
+   *
+   * @return Current configuration.
+   */
+  public static ConfigSnapshot snapshot() {
+    ConfigSnapshot current = Config.snapshot.get();
+
+    if (current == null) {
+      Config.loadProperties(Config.DEFAULT_PROPERTIES_PATH);
+      current = Config.snapshot.get();
+    }
+
+    return current == null ? ConfigSnapshot.EMPTY : current;
+  }
+
   /**
    * Loads properties, if not loaded yet, then checks are properties loaded and contains key.
    *
@@ -92,11 +252,7 @@ public class Config {
    * @return {@code true} if properties are loaded and they contains key, {@code else} otherwise.
    */
   public static boolean hasKey(String key) {
-    if (Config.configProperties == null) {
-      Config.loadProperties(Config.DEFAULT_PROPERTIES_PATH);
-    }
-
-    return Config.configProperties != null && Config.configProperties.containsKey(key);
+    return Config.snapshot().hasKey(key);
   }
 
   /**
@@ -108,11 +264,7 @@ public class Config {
    * @return Property value or {@code defaultValue}.
    */
   public static String get(String configKey, String defaultValue) {
-    if (!Config.hasKey(configKey)) {
-      return defaultValue;
-    }
-
-    return Config.configProperties.getProperty(configKey);
+    return Config.snapshot().get(configKey, defaultValue);
   }
 
   /**
@@ -123,11 +275,7 @@ public class Config {
    * @return Property value or {@code defaultValue}.
    */
   public static int get(String configKey, int defaultValue) {
-    if (!Config.hasKey(configKey)) {
-      return defaultValue;
-    }
-
-    return Integer.parseInt(Config.configProperties.getProperty(configKey));
+    return Config.snapshot().get(configKey, defaultValue);
   }
 
   /**
@@ -138,10 +286,6 @@ public class Config {
    * @return Property value or {@code defaultValue}.
    */
   public static boolean get(String configKey, boolean defaultValue) {
-    if (!Config.hasKey(configKey)) {
-      return defaultValue;
-    }
-
-    return Boolean.parseBoolean(Config.configProperties.getProperty(configKey));
+    return Config.snapshot().get(configKey, defaultValue);
   }
 }
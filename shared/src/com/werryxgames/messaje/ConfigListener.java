@@ -0,0 +1,17 @@
+package com.werryxgames.messaje;
+
+/**
+ * Listener of configuration changes, see {@link Config#addListener(ConfigListener)}.
+ *
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface ConfigListener {
+  /**
+   * Called after new configuration is loaded. Called in thread, that reloaded configuration.
+   *
+   * @param previous Previous configuration.
+   * @param current  New configuration.
+   */
+  void onConfigChanged(ConfigSnapshot previous, ConfigSnapshot current);
+}
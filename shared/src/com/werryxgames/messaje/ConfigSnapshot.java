@@ -0,0 +1,107 @@
+package com.werryxgames.messaje;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable configuration, loaded from one version of properties file. Every value is parsed
+ * only once, on first request. When file changes, {@link Config} replaces whole snapshot.
+ *
+ * @since 1.0
+ */
+public final class ConfigSnapshot {
+  public static final ConfigSnapshot EMPTY = new ConfigSnapshot(new Properties());
+
+  private final Map<String, String> values;
+  private final ConcurrentHashMap<String, Integer> intValues = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Boolean> booleanValues = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor for {@link ConfigSnapshot}.
+   *
+   * @param properties Loaded properties, they are copied.
+   */
+  public ConfigSnapshot(Properties properties) {
+    HashMap<String, String> copiedValues = new HashMap<>(properties.size() * 2);
+
+    for (String key : properties.stringPropertyNames()) {
+      copiedValues.put(key, properties.getProperty(key));
+    }
+
+    this.values = Collections.unmodifiableMap(copiedValues);
+  }
+
+  /**
+   * Checks does configuration contain key.
+   *
+   * @param key Key to check.
+   * @return {@code true} if configuration contains key.
+   */
+  public boolean hasKey(String key) {
+    return this.values.containsKey(key);
+  }
+
+  /**
+   * Returns {@link String} by {@code configKey}, or {@code defaultValue} if not found.
+   *
+   * @param configKey    Key in properties file.
+   * @param defaultValue Default string value.
+   * @return Property value or {@code defaultValue}.
+   */
+  public String get(String configKey, String defaultValue) {
+    return this.values.getOrDefault(configKey, defaultValue);
+  }
+
+  /**
+   * See {@link ConfigSnapshot#get(String, String)}.
+   *
+   * @param configKey    Key in properties file.
+   * @param defaultValue Default integer value.
+   * @return Property value or {@code defaultValue}.
+   */
+  public int get(String configKey, int defaultValue) {
+    if (!this.values.containsKey(configKey)) {
+      return defaultValue;
+    }
+
+    return this.intValues.computeIfAbsent(configKey,
+        key -> Integer.parseInt(this.values.get(key)));
+  }
+
+  /**
+   * See {@link ConfigSnapshot#get(String, String)}.
+   *
+   * @param configKey    Key in properties file.
+   * @param defaultValue Default boolean value.
+   * @return Property value or {@code defaultValue}.
+   */
+  public boolean get(String configKey, boolean defaultValue) {
+    if (!this.values.containsKey(configKey)) {
+      return defaultValue;
+    }
+
+    return this.booleanValues.computeIfAbsent(configKey,
+        key -> Boolean.parseBoolean(this.values.get(key)));
+  }
+
+  /**
+   * Checks, is any of keys changed in this snapshot, compared to other one.
+   *
+   * @param other Other snapshot, usually previous one.
+   * @param keys  Keys to compare.
+   * @return {@code true} if value of at least one key is different.
+   */
+  public boolean differs(ConfigSnapshot other, String... keys) {
+    for (String key : keys) {
+      if (!Objects.equals(this.values.get(key), other.values.get(key))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
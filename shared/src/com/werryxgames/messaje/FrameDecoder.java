@@ -0,0 +1,127 @@
+package com.werryxgames.messaje;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decoder of length-prefixed frames (packets). Reads whole frame even if it arrives in many
+ * parts, rejects frames, that are larger, than limit, and puts them in buffers from
+ * {@link BufferPool}. Every returned frame must be given back with
+ * {@link FrameDecoder#release(ByteBuffer)} after it's handled.
+ *
+ * @since 1.0
+ */
+public class FrameDecoder {
+  public int maxFrameSize;
+  protected BufferPool pool;
+  protected ByteBuffer header = ByteBuffer.allocate(4);
+  protected ByteBuffer body = null;
+
+  /**
+   * Constructor for {@link FrameDecoder}.
+   *
+   * @param maxFrameSize Maximum length of frame.
+   * @param pool         Pool of buffers for frames.
+   */
+  public FrameDecoder(int maxFrameSize, BufferPool pool) {
+    this.maxFrameSize = maxFrameSize;
+    this.pool = pool;
+  }
+
+  public FrameDecoder(int maxFrameSize) {
+    this(maxFrameSize, BufferPool.DEFAULT);
+  }
+
+  protected void checkLength(int frameLength) throws IOException {
+    if (frameLength <= 0 || frameLength > this.maxFrameSize) {
+      throw new IOException(
+          "Invalid frame length: " + frameLength + " (maximum is " + this.maxFrameSize + ")");
+    }
+  }
+
+  /**
+   * Reads one frame from blocking stream.
+   *
+   * @param inputStream Stream to read from.
+   * @return Frame, that has position 0 and limit of frame length.
+   * @throws EOFException Stream is closed.
+   * @throws IOException  Frame can't be read or it's length is invalid.
+   */
+  public ByteBuffer read(DataInputStream inputStream) throws IOException {
+    int frameLength = inputStream.readInt();
+    this.checkLength(frameLength);
+    ByteBuffer frame = this.pool.acquire(frameLength);
+
+    try {
+      inputStream.readFully(frame.array(), frame.arrayOffset(), frameLength);
+    } catch (IOException e) {
+      this.pool.release(frame);
+      throw e;
+    }
+
+    return frame;
+  }
+
+  /**
+   * Reads available bytes from non-blocking channel, until one frame is complete. Incomplete
+   * frame is kept in decoder, until next call.
+   *
+   * @param channel Channel to read from.
+   * @return Complete frame, or {@code null} if it is not fully received yet.
+   * @throws EOFException Channel is closed.
+   * @throws IOException  Bytes can't be read or length of frame is invalid.
+   */
+  public ByteBuffer read(ReadableByteChannel channel) throws IOException {
+    if (this.body == null) {
+      if (channel.read(this.header) < 0) {
+        throw new EOFException();
+      }
+
+      if (this.header.hasRemaining()) {
+        return null;
+      }
+
+      int frameLength = this.header.getInt(0);
+      this.checkLength(frameLength);
+      this.body = this.pool.acquire(frameLength);
+    }
+
+    if (channel.read(this.body) < 0) {
+      throw new EOFException();
+    }
+
+    if (this.body.hasRemaining()) {
+      return null;
+    }
+
+    ByteBuffer frame = this.body;
+    frame.flip();
+    this.header.clear();
+    this.body = null;
+    return frame;
+  }
+
+  /**
+   * Returns frame to pool.
+   *
+   * @param frame Frame, returned from one of {@code read} methods.
+   */
+  public void release(ByteBuffer frame) {
+    this.pool.release(frame);
+  }
+
+  /**
+   * Releases incomplete frame. Must be called, when connection is closed.
+   */
+  public void reset() {
+    if (this.body != null) {
+      this.pool.release(this.body);
+      this.body = null;
+    }
+
+    this.header.clear();
+  }
+}
@@ -13,6 +13,9 @@ public class Message implements ByteSerializable {
   public long contactId;
   public boolean sentByMe;
   public String text;
+  // UTF-8 bytes of text, kept until text is changed
+  protected String encodedText = null;
+  protected byte[] textBytes = null;
 
   public Message() {
   }
@@ -32,21 +35,41 @@ public class Message implements ByteSerializable {
     this.text = text;
   }
 
+  /**
+   * Returns UTF-8 bytes of text, encoding it only once.
+   *
+   * @return Encoded text, must not be changed.
+   */
+  public byte[] getTextBytes() {
+    String currentText = this.text;
+
+    if (currentText != this.encodedText) {
+      this.textBytes = currentText.getBytes(StandardCharsets.UTF_8);
+      this.encodedText = currentText;
+    }
+
+    return this.textBytes;
+  }
+
   @Override
   public int byteSize() {
-    byte[] textBytes = this.text.getBytes(StandardCharsets.UTF_8);
-    return 8 + 8 + 1 + 2 + textBytes.length;
+    return 8 + 8 + 1 + 2 + this.getTextBytes().length;
   }
 
   @Override
-  public ByteBuffer toByteBuffer() {
-    byte[] textBytes = this.text.getBytes(StandardCharsets.UTF_8);
-    ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 1 + 2 + textBytes.length);
+  public void writeTo(ByteBuffer buffer) {
+    byte[] bytes = this.getTextBytes();
     buffer.putLong(this.id);
     buffer.putLong(this.contactId);
     buffer.put((byte) (this.sentByMe ? 1 : 0));
-    buffer.putShort((short) textBytes.length);
-    buffer.put(textBytes);
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  @Override
+  public ByteBuffer toByteBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocate(this.byteSize());
+    this.writeTo(buffer);
     return buffer;
   }
 
@@ -71,4 +94,61 @@ public class Message implements ByteSerializable {
   public Message fromBytes(byte[] bytes) {
     return this.fromBytes(ByteBuffer.wrap(bytes));
   }
+
+  /**
+   * Returns size of message in {@link CompactEncoding}.
+   *
+   * @param previousId Identifier of previous message in frame, or {@code 0}.
+   * @return Number of bytes, that {@link Message#writeCompactTo(ByteBuffer, long)} writes.
+   */
+  public int compactSize(long previousId) {
+    int textLength = this.getTextBytes().length;
+    return CompactEncoding.varLongSize(CompactEncoding.zigZag(this.id - previousId))
+        + CompactEncoding.varLongSize((this.contactId << 1) | (this.sentByMe ? 1 : 0))
+        + CompactEncoding.varLongSize(textLength) + textLength;
+  }
+
+  /**
+   * Writes message with {@link CompactEncoding} at current position of buffer.
+   *
+   * @param buffer     Buffer with at least {@link Message#compactSize(long)} remaining bytes.
+   * @param previousId Identifier of previous message in frame, or {@code 0}.
+   */
+  public void writeCompactTo(ByteBuffer buffer, long previousId) {
+    byte[] bytes = this.getTextBytes();
+    CompactEncoding.putVarLong(buffer, CompactEncoding.zigZag(this.id - previousId));
+    CompactEncoding.putVarLong(buffer, (this.contactId << 1) | (this.sentByMe ? 1 : 0));
+    CompactEncoding.putVarLong(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Serializes message with {@link CompactEncoding}.
+   *
+   * @param previousId Identifier of previous message in frame, or {@code 0}.
+   * @return Serialized message.
+   */
+  public byte[] toCompactBytes(long previousId) {
+    ByteBuffer buffer = ByteBuffer.allocate(this.compactSize(previousId));
+    this.writeCompactTo(buffer, previousId);
+    return buffer.array();
+  }
+
+  /**
+   * Deserializes message, written with {@link CompactEncoding}.
+   *
+   * @param buffer     Buffer to read from.
+   * @param previousId Identifier of previous message in frame, or {@code 0}.
+   * @return This message.
+   */
+  public Message fromCompactBytes(ByteBuffer buffer, long previousId) {
+    this.id = previousId + CompactEncoding.unZigZag(CompactEncoding.getVarLong(buffer));
+    long contact = CompactEncoding.getVarLong(buffer);
+    this.contactId = contact >>> 1;
+    this.sentByMe = (contact & 1) != 0;
+    byte[] textBytes = new byte[CompactEncoding.getVarInt(buffer)];
+    buffer.get(textBytes);
+    this.text = new String(textBytes, StandardCharsets.UTF_8);
+    return this;
+  }
 }
@@ -0,0 +1,154 @@
+package com.werryxgames.messaje;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only view of messages in received packet. Identifiers and flags are read, when view is
+ * created, but text stays encoded in packet and is decoded only, when it's accessed, so large
+ * history doesn't create {@link String} for every message. Packet must not be changed, while view
+ * is used.
+ *
+ * @since 1.0
+ */
+public class MessageView {
+  protected final byte[] bytes;
+  protected final long[] ids;
+  protected final long[] contactIds;
+  protected final boolean[] sentByMe;
+  protected final int[] textOffsets;
+  protected final int[] textLengths;
+  // Sorted identifiers of contacts without duplicates
+  protected final long[] contacts;
+  protected long maxId = 0;
+
+  /**
+   * Constructor for {@link MessageView}. Reads messages from current position of buffer and
+   * moves position after them.
+   *
+   * @param buffer  Packet with array, messages are serialized with {@link Message#writeTo} or
+   *                {@link Message#writeCompactTo}.
+   * @param count   Number of messages.
+   * @param compact {@code true} if messages are in {@link CompactEncoding}.
+   * @throws IllegalArgumentException Packet is damaged.
+   */
+  public MessageView(ByteBuffer buffer, int count, boolean compact) {
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid number of messages: " + count);
+    }
+
+    this.bytes = buffer.array();
+    this.ids = new long[count];
+    this.contactIds = new long[count];
+    this.sentByMe = new boolean[count];
+    this.textOffsets = new int[count];
+    this.textLengths = new int[count];
+    long previousId = 0;
+
+    for (int i = 0; i < count; i++) {
+      int textLength;
+
+      if (compact) {
+        this.ids[i] = previousId + CompactEncoding.unZigZag(CompactEncoding.getVarLong(buffer));
+        long contact = CompactEncoding.getVarLong(buffer);
+        this.contactIds[i] = contact >>> 1;
+        this.sentByMe[i] = (contact & 1) != 0;
+        textLength = CompactEncoding.getVarInt(buffer);
+        previousId = this.ids[i];
+      } else {
+        this.ids[i] = buffer.getLong();
+        this.contactIds[i] = buffer.getLong();
+        this.sentByMe[i] = buffer.get() != 0;
+        textLength = buffer.getShort();
+      }
+
+      if (textLength < 0 || textLength > buffer.remaining()) {
+        throw new IllegalArgumentException("Invalid length of text: " + textLength);
+      }
+
+      this.textOffsets[i] = buffer.arrayOffset() + buffer.position();
+      this.textLengths[i] = textLength;
+      buffer.position(buffer.position() + textLength);
+      this.maxId = Math.max(this.maxId, this.ids[i]);
+    }
+
+    long[] sortedContacts = this.contactIds.clone();
+    Arrays.sort(sortedContacts);
+    int contactsCount = 0;
+
+    for (int i = 0; i < count; i++) {
+      if (contactsCount == 0 || sortedContacts[contactsCount - 1] != sortedContacts[i]) {
+        sortedContacts[contactsCount++] = sortedContacts[i];
+      }
+    }
+
+    this.contacts = Arrays.copyOf(sortedContacts, contactsCount);
+  }
+
+  public int size() {
+    return this.ids.length;
+  }
+
+  public long getId(int index) {
+    return this.ids[index];
+  }
+
+  public long getContactId(int index) {
+    return this.contactIds[index];
+  }
+
+  public boolean isSentByMe(int index) {
+    return this.sentByMe[index];
+  }
+
+  /**
+   * Returns contacts, that have messages in this view.
+   *
+   * @return Sorted identifiers of contacts without duplicates, must not be changed.
+   */
+  public long[] getContacts() {
+    return this.contacts;
+  }
+
+  /**
+   * Checks, are there messages of contact in this view.
+   *
+   * @param contactId Identifier of contact.
+   * @return {@code true} if at least one message belongs to conversation with contact.
+   */
+  public boolean hasContact(long contactId) {
+    return Arrays.binarySearch(this.contacts, contactId) >= 0;
+  }
+
+  /**
+   * Returns identifier of newest message.
+   *
+   * @return Identifier of message, or {@code 0} if there are no messages.
+   */
+  public long getMaxId() {
+    return this.maxId;
+  }
+
+  /**
+   * Decodes text of message. Text isn't cached, every call creates new string.
+   *
+   * @param index Index of message in packet.
+   * @return Text of message.
+   */
+  public String getText(int index) {
+    return new String(this.bytes, this.textOffsets[index], this.textLengths[index],
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates message with decoded text.
+   *
+   * @param index Index of message in packet.
+   * @return New message.
+   */
+  public Message get(int index) {
+    return new Message(this.ids[index], this.contactIds[index], this.sentByMe[index],
+        this.getText(index));
+  }
+}
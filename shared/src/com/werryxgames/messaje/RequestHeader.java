@@ -0,0 +1,53 @@
+package com.werryxgames.messaje;
+
+/**
+ * Optional identifier of request in packet header. When highest bit of operation code is set,
+ * code is followed by {@code int} identifier: {@code [short code | 0x8000][int requestId][data]}.
+ * Server copies identifier to every response to this request, so client can match responses,
+ * even if they come in different order than requests.
+ *
+ * @since 1.0
+ */
+public class RequestHeader {
+  public static final short REQUEST_ID_FLAG = (short) 0x8000;
+  public static final int REQUEST_ID_SIZE = 4;
+
+  /**
+   * Checks, is operation code followed by request identifier.
+   *
+   * @param code Operation code, read from packet.
+   * @return {@code true} if packet has request identifier.
+   */
+  public static boolean hasRequestId(short code) {
+    return (code & RequestHeader.REQUEST_ID_FLAG) != 0;
+  }
+
+  /**
+   * Removes request identifier flag from operation code.
+   *
+   * @param code Operation code, read from packet.
+   * @return Operation code without flag.
+   */
+  public static short getCode(short code) {
+    return (short) (code & ~RequestHeader.REQUEST_ID_FLAG);
+  }
+
+  /**
+   * Copies packet, inserting request identifier after operation code.
+   *
+   * @param packet    Packet, that starts with operation code without flag.
+   * @param requestId Identifier of request, not {@code 0}.
+   * @return New packet with request identifier.
+   */
+  public static byte[] withRequestId(byte[] packet, int requestId) {
+    byte[] result = new byte[packet.length + RequestHeader.REQUEST_ID_SIZE];
+    result[0] = (byte) (packet[0] | (RequestHeader.REQUEST_ID_FLAG >> 8));
+    result[1] = packet[1];
+    result[2] = (byte) (requestId >>> 24);
+    result[3] = (byte) (requestId >>> 16);
+    result[4] = (byte) (requestId >>> 8);
+    result[5] = (byte) requestId;
+    System.arraycopy(packet, 2, result, 2 + RequestHeader.REQUEST_ID_SIZE, packet.length - 2);
+    return result;
+  }
+}
@@ -12,6 +12,9 @@ public class User implements ByteSerializable {
 
   public long id;
   public String name;
+  // UTF-8 bytes of name, kept until name is changed
+  protected String encodedName = null;
+  protected byte[] nameBytes = null;
 
   public User() {
   }
@@ -21,19 +24,39 @@ public class User implements ByteSerializable {
     this.name = name;
   }
 
+  /**
+   * Returns UTF-8 bytes of name, encoding it only once.
+   *
+   * @return Encoded name, must not be changed.
+   */
+  public byte[] getNameBytes() {
+    String currentName = this.name;
+
+    if (currentName != this.encodedName) {
+      this.nameBytes = currentName.getBytes(StandardCharsets.UTF_8);
+      this.encodedName = currentName;
+    }
+
+    return this.nameBytes;
+  }
+
   @Override
   public int byteSize() {
-    byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
-    return 8 + 1 + nameBytes.length;
+    return 8 + 1 + this.getNameBytes().length;
   }
 
   @Override
-  public ByteBuffer toByteBuffer() {
-    byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
-    ByteBuffer buffer = ByteBuffer.allocate(8 + 1 + nameBytes.length);
+  public void writeTo(ByteBuffer buffer) {
+    byte[] bytes = this.getNameBytes();
     buffer.putLong(this.id);
-    buffer.put((byte) nameBytes.length);
-    buffer.put(nameBytes);
+    buffer.put((byte) bytes.length);
+    buffer.put(bytes);
+  }
+
+  @Override
+  public ByteBuffer toByteBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocate(this.byteSize());
+    this.writeTo(buffer);
     return buffer;
   }
 
@@ -56,4 +79,52 @@ public class User implements ByteSerializable {
   public User fromBytes(byte[] bytes) {
     return this.fromBytes(ByteBuffer.wrap(bytes));
   }
+
+  /**
+   * Returns size of user in {@link CompactEncoding}.
+   *
+   * @return Number of bytes, that {@link User#writeCompactTo(ByteBuffer)} writes.
+   */
+  public int compactSize() {
+    int nameLength = this.getNameBytes().length;
+    return CompactEncoding.varLongSize(this.id) + CompactEncoding.varLongSize(nameLength)
+        + nameLength;
+  }
+
+  /**
+   * Writes user with {@link CompactEncoding} at current position of buffer.
+   *
+   * @param buffer Buffer with at least {@link User#compactSize()} remaining bytes.
+   */
+  public void writeCompactTo(ByteBuffer buffer) {
+    byte[] bytes = this.getNameBytes();
+    CompactEncoding.putVarLong(buffer, this.id);
+    CompactEncoding.putVarLong(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Serializes user with {@link CompactEncoding}.
+   *
+   * @return Serialized user.
+   */
+  public byte[] toCompactBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(this.compactSize());
+    this.writeCompactTo(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Deserializes user, written with {@link CompactEncoding}.
+   *
+   * @param buffer Buffer to read from.
+   * @return This user.
+   */
+  public User fromCompactBytes(ByteBuffer buffer) {
+    this.id = CompactEncoding.getVarLong(buffer);
+    byte[] nameBytes = new byte[CompactEncoding.getVarInt(buffer)];
+    buffer.get(nameBytes);
+    this.name = new String(nameBytes, StandardCharsets.UTF_8);
+    return this;
+  }
 }